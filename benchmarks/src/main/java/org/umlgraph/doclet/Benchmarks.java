@@ -0,0 +1,27 @@
+package org.umlgraph.doclet;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line, as the JMH launcher does,
+ * writing the results in JSON to <code>target/jmh-result.json</code> unless
+ * another result format or file is specified, so that they can be compared
+ * between releases.
+ */
+public class Benchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            builder.result("target/jmh-result.json");
+        }
+        new Runner(builder.build()).run();
+    }
+}
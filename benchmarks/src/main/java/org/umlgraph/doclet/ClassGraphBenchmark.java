@@ -0,0 +1,124 @@
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import javax.lang.model.element.TypeElement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.umlgraph.test.CorpusGenerator;
+
+/**
+ * Measures the passes of {@link UmlGraph#buildGraph} over all of the classes
+ * of a corpus: printing the class nodes, then their relations, inferred
+ * relations, and inferred dependencies. A class graph prints a class only
+ * once, so each invocation works on a new graph, which for the relation passes
+ * already holds the class nodes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassGraphBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({ "java", "generated" })
+        public String corpus;
+
+        @Param({ "5000" })
+        public int generatedClasses;
+
+        DocletFixture fixture;
+        File output;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            output = Files.createTempDirectory("umlgraph-bench").toFile();
+            fixture = new DocletFixture(corpus, generatedClasses, "--d=" + output.getAbsolutePath(),
+                    "--output=graph.dot", "-inferrel", "-inferdep", "-attributes", "-operations", "-types",
+                    "-visibility");
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            fixture.close();
+            CorpusGenerator.delete(output);
+        }
+
+        ClassGraph newGraph() throws IOException {
+            ClassGraph graph = new ClassGraph(fixture.root, fixture.options, null);
+            graph.prologue();
+            return graph;
+        }
+    }
+
+    /** A graph holding the nodes of all of the classes */
+    @State(Scope.Thread)
+    public static class PrintedGraph {
+        ClassGraph graph;
+
+        @Setup(Level.Invocation)
+        public void setUp(Corpus corpus) throws IOException {
+            graph = corpus.newGraph();
+            for (TypeElement cd : corpus.fixture.classes) {
+                graph.printClass(cd, true);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            graph.epilogue();
+        }
+    }
+
+    @Benchmark
+    public ClassGraph printClass(Corpus corpus) throws IOException {
+        ClassGraph graph = corpus.newGraph();
+        for (TypeElement cd : corpus.fixture.classes) {
+            graph.printClass(cd, true);
+        }
+        graph.epilogue();
+        return graph;
+    }
+
+    @Benchmark
+    public ClassGraph printRelations(Corpus corpus, PrintedGraph printed) {
+        for (TypeElement cd : corpus.fixture.classes) {
+            printed.graph.printRelations(cd);
+        }
+        return printed.graph;
+    }
+
+    @Benchmark
+    public ClassGraph printInferredRelations(Corpus corpus, PrintedGraph printed) {
+        for (TypeElement cd : corpus.fixture.classes) {
+            printed.graph.printInferredRelations(cd);
+        }
+        return printed.graph;
+    }
+
+    @Benchmark
+    public ClassGraph printInferredDependencies(Corpus corpus, PrintedGraph printed) {
+        for (TypeElement cd : corpus.fixture.classes) {
+            printed.graph.printInferredDependencies(cd);
+        }
+        return printed.graph;
+    }
+}
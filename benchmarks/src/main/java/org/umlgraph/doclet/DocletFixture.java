@@ -0,0 +1,146 @@
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+import javax.tools.DocumentationTool;
+import javax.tools.ToolProvider;
+
+import jdk.javadoc.doclet.Doclet;
+import jdk.javadoc.doclet.DocletEnvironment;
+import jdk.javadoc.doclet.Reporter;
+
+import org.umlgraph.test.CorpusGenerator;
+
+/**
+ * A javadoc run on a benchmark corpus, held inside the doclet's run method so
+ * that benchmarks can use its live environment.
+ * <p>
+ * The corpus "java" is the <code>gr</code> tree of the regression tests in
+ * <code>testdata/java</code>, found through the <code>umlgraph.testdata</code>
+ * system property (<code>../testdata</code> by default). The corpus
+ * "generated" is written to a temporary directory by the
+ * {@link CorpusGenerator} of the regression tests.
+ */
+public class DocletFixture implements AutoCloseable {
+
+    /** The doclet run of the fixture, handed over from javadoc's thread */
+    private static final SynchronousQueue<CaptureDoclet> started = new SynchronousQueue<>();
+
+    /** A doclet that parks in its run method until the fixture is closed */
+    public static class CaptureDoclet implements Doclet {
+        private final Options options = new Options();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private DocletEnvironment root;
+
+        @Override
+        public void init(Locale locale, Reporter reporter) {
+        }
+
+        @Override
+        public String getName() {
+            return getClass().getSimpleName();
+        }
+
+        @Override
+        public Set<? extends Doclet.Option> getSupportedOptions() {
+            return options.OPTIONS;
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latest();
+        }
+
+        @Override
+        public boolean run(DocletEnvironment root) {
+            this.root = root;
+            try {
+                started.put(this);
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private final Thread javadoc;
+    private final CaptureDoclet doclet;
+    private final File generated;
+    private final RunContext run;
+    /** The environment of the run */
+    public final DocletEnvironment root;
+    /** The options of the run, as UmlGraph builds them */
+    public final Options options;
+    /** The classes of the corpus, in javadoc order */
+    public final List<TypeElement> classes;
+
+    /**
+     * Start javadoc on the named corpus
+     *
+     * @param corpus     "java" or "generated"
+     * @param classCount the number of classes of a generated corpus
+     * @param umlOptions the UmlGraph options of the run
+     */
+    public DocletFixture(String corpus, int classCount, String... umlOptions) throws IOException, InterruptedException {
+        File sourcePath;
+        if (corpus.equals("java")) {
+            generated = null;
+            sourcePath = new File(System.getProperty("umlgraph.testdata", "../testdata"), "java");
+        } else if (corpus.equals("generated")) {
+            generated = Files.createTempDirectory("umlgraph-corpus").toFile();
+            new CorpusGenerator().classes(classCount).generate(generated);
+            sourcePath = generated;
+        } else {
+            throw new IllegalArgumentException("Unknown corpus " + corpus);
+        }
+
+        List<String> arguments = new ArrayList<>(List.of("-quiet", "-private", "-sourcepath",
+                sourcePath.getAbsolutePath(), "-subpackages", "gr"));
+        arguments.addAll(Arrays.asList(umlOptions));
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        DocumentationTool.DocumentationTask task = tool.getTask(null, null, null, CaptureDoclet.class, arguments,
+                null);
+        javadoc = new Thread(task::call, "javadoc");
+        javadoc.setDaemon(true);
+        javadoc.start();
+
+        CaptureDoclet d = null;
+        while (d == null && javadoc.isAlive()) {
+            d = started.poll(1, TimeUnit.SECONDS);
+        }
+        if (d == null) {
+            throw new IOException("javadoc failed on " + sourcePath);
+        }
+        doclet = d;
+        root = d.root;
+        run = new RunContext(root);
+        d.options.run = run;
+        options = UmlGraph.buildOptions(root, d.options);
+        classes = run.getModel().getClasses();
+    }
+
+    /** Let javadoc finish and remove the generated corpus, if any */
+    @Override
+    public void close() throws InterruptedException {
+        run.close();
+        doclet.done.countDown();
+        javadoc.join();
+        if (generated != null) {
+            CorpusGenerator.delete(generated);
+        }
+    }
+}
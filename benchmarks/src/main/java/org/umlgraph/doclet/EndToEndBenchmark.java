@@ -0,0 +1,82 @@
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.umlgraph.test.CorpusGenerator;
+import org.umlgraph.test.ScaleRun;
+
+/**
+ * Measures complete javadoc runs of UmlGraph, with its views, and of
+ * UmlGraphDoc on a generated corpus. Each run is timed on its own; its
+ * throughput in classes per second and its peak heap are printed after it.
+ * UmlGraphDoc needs Graphviz in the path.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class EndToEndBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int generatedClasses;
+
+    private CorpusGenerator generator;
+    private File sourcePath;
+    private File output;
+    private ScaleRun.Result result;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sourcePath = Files.createTempDirectory("umlgraph-corpus").toFile();
+        generator = new CorpusGenerator().classes(generatedClasses);
+        generator.generate(sourcePath);
+    }
+
+    @Setup(Level.Iteration)
+    public void createOutput() throws Exception {
+        output = Files.createTempDirectory("umlgraph-bench").toFile();
+    }
+
+    @TearDown(Level.Iteration)
+    public void report() {
+        System.out.println();
+        System.out.println(result);
+        if (!result.success) {
+            System.out.print(result.log);
+        }
+        CorpusGenerator.delete(output);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CorpusGenerator.delete(sourcePath);
+    }
+
+    @Benchmark
+    public ScaleRun.Result umlGraph() {
+        return result = ScaleRun.run(UmlGraph.class, sourcePath, generator.getTypeCount(), output, "-views");
+    }
+
+    @Benchmark
+    public ScaleRun.Result umlGraphDoc() {
+        return result = ScaleRun.run(UmlGraphDoc.class, sourcePath, generator.getTypeCount(), output);
+    }
+}
@@ -0,0 +1,108 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.umlgraph.doclet.util.TagUtil;
+
+import com.sun.source.doctree.DocCommentTree;
+import com.sun.source.util.DocTrees;
+
+/**
+ * Measures the option handling done for every class of a diagram: cloning the
+ * options, computing the options of a class, matching the hide patterns, and
+ * reading the doc tags, both from the run's tag cache and by scanning the doc
+ * comment again. The per-class operations run over all of the classes of the
+ * corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OptionsBenchmark {
+
+    @Param({ "java", "generated" })
+    public String corpus;
+
+    @Param({ "5000" })
+    public int generatedClasses;
+
+    private DocletFixture fixture;
+    private DocTrees docTrees;
+    private List<Name> names;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new DocletFixture(corpus, generatedClasses, "-inferrel", "-inferdep", "-attributes",
+                "--hide=java.*", "--hide=.*\\.p1\\..*", "--hide=.*Item$", "--collpackages=java.util.*");
+        docTrees = fixture.root.getDocTrees();
+        names = new ArrayList<>();
+        for (TypeElement cd : fixture.classes) {
+            names.add(cd.getQualifiedName());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Options cloneOptions() {
+        return fixture.options.clone();
+    }
+
+    @Benchmark
+    public void getOptionsFor(Blackhole bh) {
+        for (TypeElement cd : fixture.classes) {
+            bh.consume(fixture.options.getOptionsFor(docTrees, cd));
+        }
+    }
+
+    @Benchmark
+    public void matchesHideExpression(Blackhole bh) {
+        for (Name name : names) {
+            bh.consume(fixture.options.matchesHideExpression(name));
+        }
+    }
+
+    @Benchmark
+    public void getTags(Blackhole bh) {
+        for (TypeElement cd : fixture.classes) {
+            bh.consume(TagUtil.getTags(docTrees, cd));
+        }
+    }
+
+    @Benchmark
+    public void scanTags(Blackhole bh) {
+        for (TypeElement cd : fixture.classes) {
+            DocCommentTree comment = docTrees.getDocCommentTree(cd);
+            Map<String, List<String>> tags = new HashMap<>();
+            new TagScanner(tags).visit(comment, null);
+            bh.consume(tags);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.lang.model.element.Name;
+
+/**
+ * The mapping of external class names to the URL roots of their
+ * documentation, as specified by the <code>-link</code>,
+ * <code>-linkoffline</code> and <code>-apidocmap</code> options.
+ * <p>
+ * The packages read from the <code>package-list</code> and
+ * <code>element-list</code> files are kept in a trie of name segments, where
+ * the longest listed package that a class name starts with is found in time
+ * proportional to the depth of the name. The name must continue with a class
+ * name: a single segment, or a nested class whose outer class name does not
+ * begin with a lowercase letter. The regular expressions of the mapping files
+ * are tried in turn.
+ * <p>
+ * The mappings are ordered by the options that specified them, and the first
+ * one matching a class wins. Mappings are added to a copy of the map; a map
+ * is not modified once it is in use, and can be shared between the copies of
+ * the options and between threads. The root found for each class name is
+ * remembered.
+ */
+class ApiDocMap {
+    /** The result remembered for the names no mapping matches */
+    private static final String NONE = new String();
+
+    /** A package name segment; a listed package has a root */
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        String root;
+        /** The number of the option the root comes from */
+        int source;
+    }
+
+    /** A regular expression of a mapping file */
+    private static class PatternRoot {
+        final Pattern pattern;
+        final String root;
+        final int source;
+
+        PatternRoot(Pattern pattern, String root, int source) {
+            this.pattern = pattern;
+            this.root = root;
+            this.source = source;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + "=" + root;
+        }
+    }
+
+    private final Node packages;
+    private final List<PatternRoot> patterns;
+    /** The number of options the mappings come from */
+    private final int sources;
+    private final Map<CharSequence, String> results = new ConcurrentHashMap<>();
+
+    /** Create an empty map */
+    ApiDocMap() {
+        this(new Node(), new ArrayList<>(), 0);
+    }
+
+    private ApiDocMap(Node packages, List<PatternRoot> patterns, int sources) {
+        this.packages = packages;
+        this.patterns = patterns;
+        this.sources = sources;
+    }
+
+    /** Return true if there are no mappings */
+    boolean isEmpty() {
+        return packages.children.isEmpty() && patterns.isEmpty();
+    }
+
+    /**
+     * Return a copy of the map with the packages of a package list mapped to
+     * the specified root. Packages mapped by a previous option keep their
+     * root.
+     */
+    ApiDocMap withPackages(List<String> packageNames, String root) {
+        Node trie = copy(packages);
+        for (String packageName : packageNames) {
+            Node node = trie;
+            for (String segment : packageName.split("\\.")) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            if (node.root == null) {
+                node.root = root;
+                node.source = sources;
+            }
+        }
+        return new ApiDocMap(trie, patterns, sources + 1);
+    }
+
+    /** Return a copy of the map with the regular expressions mapped to their roots */
+    ApiDocMap withPatterns(Map<Pattern, String> roots) {
+        List<PatternRoot> list = new ArrayList<>(patterns);
+        for (Map.Entry<Pattern, String> e : roots.entrySet()) {
+            list.add(new PatternRoot(e.getKey(), e.getValue(), sources));
+        }
+        return new ApiDocMap(packages, list, sources + 1);
+    }
+
+    private static Node copy(Node node) {
+        Node copy = new Node();
+        copy.root = node.root;
+        copy.source = node.source;
+        for (Map.Entry<String, Node> e : node.children.entrySet()) {
+            copy.children.put(e.getKey(), copy(e.getValue()));
+        }
+        return copy;
+    }
+
+    /** Return the root of the documentation of the specified class, or null */
+    String getRoot(CharSequence className) {
+        // names and strings are immutable; other sequences are copied
+        CharSequence key = className instanceof String || className instanceof Name ? className : className.toString();
+        String result = results.get(key);
+        if (result == null) {
+            result = find(className.toString());
+            results.put(key, result == null ? NONE : result);
+        }
+        return result == NONE ? null : result;
+    }
+
+    private String find(String className) {
+        Node found = null;
+        Node node = packages;
+        int start = 0;
+        for (int end = className.indexOf('.'); end >= 0 && node != null; end = className.indexOf('.', start)) {
+            node = node.children.get(className.substring(start, end));
+            start = end + 1;
+            if (node != null && node.root != null && isClassName(className, start)) {
+                found = node;
+            }
+        }
+        int source = found != null ? found.source : sources;
+        for (PatternRoot pattern : patterns) {
+            if (pattern.source >= source) {
+                break;
+            }
+            if (pattern.pattern.matcher(className).matches()) {
+                return pattern.root;
+            }
+        }
+        return found != null ? found.root : null;
+    }
+
+    /** Return true if the name continues with a class name from position start */
+    private static boolean isClassName(String name, int start) {
+        return name.indexOf('.', start) < 0 || !Character.isLowerCase(name.charAt(start));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        append(sb, "", packages);
+        for (PatternRoot pattern : patterns) {
+            sb.append(sb.length() > 1 ? ", " : "").append(pattern);
+        }
+        return sb.append('}').toString();
+    }
+
+    /** Append the listed packages in the order of their names */
+    private static void append(StringBuilder sb, String prefix, Node node) {
+        if (node.root != null) {
+            sb.append(sb.length() > 1 ? ", " : "").append(prefix).append('=').append(node.root);
+        }
+        List<String> segments = new ArrayList<>(node.children.keySet());
+        segments.sort(null);
+        for (String segment : segments) {
+            append(sb, prefix.isEmpty() ? segment : prefix + "." + segment, node.children.get(segment));
+        }
+    }
+}
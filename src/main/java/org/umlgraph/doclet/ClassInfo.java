@@ -32,7 +32,6 @@ import javax.lang.model.element.Name;
  * @author <a href="http://www.spinellis.gr">Diomidis Spinellis</a>
  */
 class ClassInfo {
-    private static int classNumber;
     /** Alias name for the class */
     final String name;
     /** True if the class class node has been printed */
@@ -46,10 +45,9 @@ class ClassInfo {
      */
     Map<String, RelationPattern> relatedClasses = new HashMap<>();
 
-    ClassInfo(boolean h) {
+    ClassInfo(boolean h, int number) {
         hidden = h;
-        name = "c" + classNumber;
-        classNumber++;
+        name = "c" + number;
     }
 
     public void addRelation(Name dest, RelationType rt, RelationDirection d) {
@@ -65,9 +63,4 @@ class ClassInfo {
         return relatedClasses.get(dest.toString());
     }
 
-    /** Start numbering from zero. */
-    public static void reset() {
-        classNumber = 0;
-    }
-
 }
@@ -18,17 +18,13 @@
 package org.umlgraph.doclet;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
 import jdk.javadoc.doclet.DocletEnvironment;
 
-import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 
 /**
@@ -37,19 +33,18 @@ import javax.lang.model.element.TypeElement;
  * lookup. Depending on the specified Options, inferred relations and
  * dependencies will be used as well.
  * <p>
- * This class needs to perform quite a bit of computations in order to gather
- * the network of class releationships, so you are allowed to reuse it should
- * you
+ * The network of class relationships is taken from the {@link RelationIndex}
+ * of the run, which is built the first time it is needed with a given set of
+ * options and shared by all of the matchers using them. Matching a class then
+ * only involves the relations of the context center.
  * 
  * @author wolf
- * 
- * @depend - - - DevNullWriter
  */
 public class ContextMatcher implements ClassMatcher {
-    ClassGraphHack cg;
+    UmlModel model;
+    RelationIndex index;
     Pattern pattern;
     List<TypeElement> matched;
-    Set<String> visited = new HashSet<>();
     /** The options will be used to decide on inference */
     Options opt;
     DocletEnvironment root;
@@ -74,7 +69,8 @@ public class ContextMatcher implements ClassMatcher {
         opt.setOption(new String[] { "!hide" });
         opt.setOption(new String[] { "!attributes" });
         opt.setOption(new String[] { "!operations" });
-        this.cg = new ClassGraphHack(root, opt);
+        this.model = opt.run.getModel();
+        this.index = opt.run.getRelationIndex(opt);
 
         setContextCenter(pattern);
     }
@@ -88,41 +84,40 @@ public class ContextMatcher implements ClassMatcher {
      * @param pattern
      */
     public void setContextCenter(Pattern pattern) {
-        // build up the classgraph printing the relations for all of the
-        // classes that make up the "center" of this context
         this.pattern = pattern;
         matched = new ArrayList<>();
-        for (Element cd : root.getIncludedElements()) {
-            if (cd instanceof TypeElement && pattern.matcher(cd.toString()).matches()) {
-                matched.add((TypeElement) cd);
-                addToGraph((TypeElement) cd);
+        for (TypeElement cd : model.getClasses()) {
+            if (pattern.matcher(cd.toString()).matches()) {
+                matched.add(cd);
             }
         }
     }
 
     /**
-     * Adds the specified class to the internal class graph along with its relations
-     * and dependencies, eventually inferring them, according to the Options
-     * specified for this matcher
-     * 
-     * @param cd
+     * Moves the center of the context to the specified class. Unlike
+     * {@link #setContextCenter(Pattern)}, the classes of the run need not be
+     * matched against a pattern.
      */
-    private void addToGraph(TypeElement cd) {
-        // avoid adding twice the same class, but don't rely on cg.getClassInfo
-        // since there are other ways to add a classInfor than printing the class
-        if (visited.contains(cd.toString())) {
-            return;
+    public void setContextCenter(TypeElement cd) {
+        this.pattern = Pattern.compile(Pattern.quote(cd.toString()));
+        matched = new ArrayList<>();
+        if (model.getIncludedClass(cd.getQualifiedName()) == cd) {
+            matched.add(cd);
         }
+    }
 
-        visited.add(cd.toString());
-        cg.printClass(cd, false);
-        cg.printRelations(cd);
-        if (opt.inferRelationships) {
-            cg.printInferredRelations(cd);
-        }
-        if (opt.inferDependencies) {
-            cg.printInferredDependencies(cd);
-        }
+    /** Return the index of the relations the matcher uses */
+    public RelationIndex getRelationIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the names of the classes sharing with the specified class a
+     * relation that matches the context relation pattern, that is, the classes
+     * that may appear in its context.
+     */
+    public Set<String> getNeighbours(TypeElement cd) {
+        return index.getRelated(cd.getQualifiedName(), opt.contextRelationPattern);
     }
 
     /**
@@ -138,9 +133,7 @@ public class ContextMatcher implements ClassMatcher {
             return true;
         }
 
-        // otherwise, add the class to the graph and see if it's associated
-        // with any of the matched classes using the classgraph hack
-        addToGraph(cd);
+        // otherwise see if it's associated with any of the matched classes
         return matches(cd.toString());
     }
 
@@ -153,58 +146,11 @@ public class ContextMatcher implements ClassMatcher {
         }
 
         for (TypeElement mcd : matched) {
-            RelationPattern rp = cg.getClassInfo(mcd, true).getRelation(name);
-            if (rp != null && opt.contextRelationPattern.matchesOne(rp)) {
+            if (index.isRelated(mcd.getQualifiedName(), name, opt.contextRelationPattern)) {
                 return true;
             }
         }
         return false;
     }
 
-    /**
-     * A quick hack to compute class dependencies reusing ClassGraph but without
-     * generating output. Will be removed once the ClassGraph class will be split
-     * into two classes for graph computation and output generation.
-     * 
-     * @author wolf
-     * 
-     */
-    private static class ClassGraphHack extends ClassGraph {
-
-        public ClassGraphHack(DocletEnvironment root, OptionProvider optionProvider) throws IOException {
-            super(root, optionProvider, null);
-            prologue();
-        }
-
-        @Override
-        public void prologue() throws IOException {
-            w = new PrintWriter(new DevNullWriter());
-        }
-
-    }
-
-    /**
-     * Simple dev/null imitation
-     * 
-     * @author wolf
-     */
-    private static class DevNullWriter extends Writer {
-
-        @Override
-        public void write(char[] cbuf, int off, int len) throws IOException {
-            // nothing to do
-        }
-
-        @Override
-        public void flush() throws IOException {
-            // nothing to do
-        }
-
-        @Override
-        public void close() throws IOException {
-            // nothing to do
-        }
-
-    }
-
 }
@@ -1,13 +1,18 @@
 package org.umlgraph.doclet;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import jdk.javadoc.doclet.DocletEnvironment;
 
 import javax.lang.model.element.ModuleElement;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.Elements;
 
+import org.umlgraph.doclet.util.ElementTagCache;
 import org.umlgraph.doclet.util.ElementUtil;
 
 import com.sun.source.util.DocTrees;
@@ -28,12 +33,16 @@ public class ContextView implements OptionProvider {
 
     private TypeElement cd;
     private DocletEnvironment root;
+    private RunContext run;
+    private ElementTagCache tags;
     private ContextMatcher matcher;
     private Options globalOptions;
     private Options myGlobalOptions;
     private Options hideOptions;
     private Options centerOptions;
     private Options packageOptions;
+    /** True if include expressions may add classes outside the context */
+    private final boolean includes;
     private static final String[] HIDE_OPTIONS = new String[] { "hide" };
 
     public ContextView(String outputFolder, TypeElement cd, DocletEnvironment root, Options parent) throws IOException {
@@ -44,11 +53,14 @@ public class ContextView implements OptionProvider {
         String outputPath = pathPrefix + ElementUtil.getPackageOf(root, cd).getQualifiedName().toString().replace('.', '/') + "/" + cd.getSimpleName() + ".dot";
 
         // setup options statically, so that we won't need to change them so
-        // often
-        this.globalOptions = parent.getGlobalOptions();
+        // often; they are shared by all the classes without @opt tags
+        this.globalOptions = parent.getGlobalOptions().freeze();
+        this.run = globalOptions.run;
+        this.tags = run.getTags();
 
         this.packageOptions = parent.getGlobalOptions();
         this.packageOptions.showQualified = false;
+        this.packageOptions.freeze();
 
         this.myGlobalOptions = parent.getGlobalOptions();
         this.myGlobalOptions.setOption(new String[] { "output", outputPath });
@@ -56,13 +68,28 @@ public class ContextView implements OptionProvider {
 
         this.hideOptions = parent.getGlobalOptions();
         this.hideOptions.setOption(HIDE_OPTIONS);
+        this.hideOptions.freeze();
 
         this.centerOptions = parent.getGlobalOptions();
         this.centerOptions.nodeFillColor = "lemonChiffon";
         this.centerOptions.showQualified = false;
+        this.centerOptions.freeze();
 
         this.matcher = new ContextMatcher(root, Pattern.compile(Pattern.quote(cd.toString())), myGlobalOptions, true);
+        this.includes = !globalOptions.includePatterns.isEmpty() || hasIncludeTags(run);
+    }
 
+    /** Return true if a class of the run has an include option tag */
+    private static boolean hasIncludeTags(RunContext run) {
+        for (TypeElement c : run.getModel().getClasses()) {
+            for (String tag : run.getTags().getTag(c, "opt")) {
+                String[] opt = StringUtil.tokenize(tag);
+                if (opt.length > 0 && Options.matchOption(opt[0], "include", true)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 
     public void setContextCenter(TypeElement contextCenter) {
@@ -71,7 +98,41 @@ public class ContextView implements OptionProvider {
         String pathPrefix = Runtime.version().major() > 10 && md != null ? md.getQualifiedName().toString() + "/" : "";
         String outputPath = pathPrefix + ElementUtil.getPackageOf(root, cd).getQualifiedName().toString().replace('.', '/') + "/" + cd.getSimpleName() + ".dot";
         this.myGlobalOptions.setOption(new String[] { "output", outputPath });
-        matcher.setContextCenter(Pattern.compile(Pattern.quote(cd.toString())));
+        matcher.setContextCenter(cd);
+    }
+
+    /** Return the class at the center of the context */
+    TypeElement getContextCenter() {
+        return cd;
+    }
+
+    /**
+     * Return the classes of the run that may appear in the context diagram:
+     * the center and the classes related to it, in the order of the run. The
+     * relations come from the run's relation index, which is built once per
+     * run, so that a diagram costs as much as the center's relations rather
+     * than the size of the run. All of the classes are returned if include
+     * expressions may show other classes.
+     */
+    List<TypeElement> getContextClasses() {
+        UmlModel model = run.getModel();
+        if (includes || model.getIndex(cd.getQualifiedName()) < 0) {
+            return model.getClasses();
+        }
+        Elements elements = root.getElementUtils();
+        List<TypeElement> classes = new ArrayList<>();
+        classes.add(cd);
+        // the names are entered in javac's table
+        synchronized (run) {
+            for (String name : matcher.getNeighbours(cd)) {
+                TypeElement c = model.getIncludedClass(elements.getName(name));
+                if (c != null && c != cd) {
+                    classes.add(c);
+                }
+            }
+        }
+        classes.sort(Comparator.comparingInt(c -> model.getIndex(c.getQualifiedName())));
+        return classes;
     }
 
     public String getDisplayName() {
@@ -94,6 +155,9 @@ public class ContextView implements OptionProvider {
         } else {
             opt = globalOptions;
         }
+        if (tags.getTag(cd, "opt").isEmpty() && (opt != hideOptions || !cd.equals(this.cd))) {
+            return opt;
+        }
         Options optionClone = (Options) opt.clone();
         overrideForClass(optionClone, cd);
         return optionClone;
@@ -108,9 +172,9 @@ public class ContextView implements OptionProvider {
         } else {
             opt = globalOptions;
         }
-        Options optionClone = (Options) opt.clone();
-        overrideForClass(optionClone, name);
-        return optionClone;
+        // the overrides for a class name can only hide classes outside the
+        // context, which the hide options already hide
+        return opt;
     }
 
     public void overrideForClass(Options opt, TypeElement cd) {
@@ -0,0 +1,47 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+
+import com.sun.source.util.DocTreePath;
+
+import jdk.javadoc.doclet.Reporter;
+
+/**
+ * Reporter that keeps the messages of a task running on a worker thread, so
+ * that they can be passed on to the javadoc reporter in a predictable order.
+ */
+class DeferredReporter implements Reporter {
+
+    private interface Message {
+        void printTo(Reporter reporter);
+    }
+
+    private final List<Message> messages = new ArrayList<>();
+
+    @Override
+    public synchronized void print(Diagnostic.Kind kind, String msg) {
+        messages.add(reporter -> reporter.print(kind, msg));
+    }
+
+    @Override
+    public synchronized void print(Diagnostic.Kind kind, DocTreePath path, String msg) {
+        messages.add(reporter -> reporter.print(kind, path, msg));
+    }
+
+    @Override
+    public synchronized void print(Diagnostic.Kind kind, Element e, String msg) {
+        messages.add(reporter -> reporter.print(kind, e, msg));
+    }
+
+    /** Pass the messages kept so far to the specified reporter and forget them */
+    public synchronized void replay(Reporter reporter) {
+        for (Message message : messages) {
+            message.printTo(reporter);
+        }
+        messages.clear();
+    }
+}
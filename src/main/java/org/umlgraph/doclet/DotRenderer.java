@@ -0,0 +1,566 @@
+/*
+ * Create a graphviz graph based on the classes in the specified java
+ * source files.
+ *
+ * (C) Copyright 2002-2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import static org.umlgraph.doclet.StringUtil.escape;
+import static org.umlgraph.doclet.StringUtil.fmt;
+import static org.umlgraph.doclet.StringUtil.guilWrap;
+import static org.umlgraph.doclet.StringUtil.guillemize;
+import static org.umlgraph.doclet.StringUtil.htmlNewline;
+import static org.umlgraph.doclet.StringUtil.splitPackageClass;
+import static org.umlgraph.doclet.StringUtil.tokenize;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+
+import org.umlgraph.doclet.UmlModel.ClassNode;
+import org.umlgraph.doclet.util.ElementTagCache;
+import org.umlgraph.doclet.util.ElementUtil;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * Renders a class graph in the Graphviz dot language
+ *
+ * @depend - - - StringUtil
+ * @depend - - - Font
+ *
+ * @version $Revision$
+ * @author <a href="http://www.spinellis.gr">Diomidis Spinellis</a>
+ */
+class DotRenderer implements ModelRenderer {
+
+    enum Align {
+        LEFT, CENTER, RIGHT;
+
+        public final String lower;
+
+        private Align() {
+            this.lower = toString().toLowerCase();
+        }
+    };
+
+    private final ElementTagCache tags;
+    private final Types types;
+    protected DotWriter w;
+    protected String linePostfix;
+    protected String linePrefix;
+
+    /**
+     * Create a new DotRenderer
+     *
+     * @param root The root of docs as provided by the javadoc API
+     * @param opt  The global options of the graph
+     */
+    public DotRenderer(DocletEnvironment root, Options opt) {
+        this.tags = opt.run.getTags();
+        this.types = root.getTypeUtils();
+        linePrefix = opt.compact ? "" : "\t";
+        linePostfix = opt.compact ? "" : "\n";
+    }
+
+    /** Return the class's name, possibly by stripping the leading path
+     * @param list */
+    private String qualifiedName(Options opt, Name className, List<? extends TypeParameterElement> typeParameters) {
+        String genericsInfo = "";
+        if (opt.hideGenerics || typeParameters == null || typeParameters.isEmpty()) {
+            // nothing to do
+        } else {
+            for (int i = 0; i < typeParameters.size(); i++) {
+                if (i == 0) {
+                    genericsInfo += "<";
+                }
+                TypeParameterElement type = typeParameters.get(i);
+                List<? extends TypeMirror> mirrors = type.getBounds();
+                if (opt.showQualifiedGenerics && mirrors != null && !mirrors.isEmpty()) {
+                    for (TypeMirror m : mirrors) {
+                        genericsInfo += ElementUtil.getQualifiedName(types, m);
+                    }
+                } else {
+                    genericsInfo += type.getSimpleName();
+                }
+                if (i < typeParameters.size() - 1) {
+                    genericsInfo += ", ";
+                } else if (i == typeParameters.size() - 1) {
+                    genericsInfo += ">";
+                }
+            }
+        }
+
+        if (opt.showQualified) {
+            return className.toString() + genericsInfo;
+        }
+        StringBuilder buf = new StringBuilder(className.length());
+        qualifiedNameInner(opt, className, buf, 0, !opt.showQualified);
+        return buf.toString() + genericsInfo;
+    }
+
+    private static int qualifiedNameInner(Options opt, Name r, StringBuilder buf, int last, boolean strip) {
+        strip = strip && last < r.length() && Character.isLowerCase(r.charAt(last));
+        for (int i = last; i < r.length(); i++) {
+            char c = r.charAt(i);
+            if (c == '.' || c == '$') {
+                if (strip)
+                    last = i + 1; // skip dot
+                strip = strip && last < r.length() && Character.isLowerCase(r.charAt(last));
+                continue;
+            }
+            if (Character.isJavaIdentifierPart(c))
+                continue;
+            buf.append(r, last, i);
+            last = i;
+            // Handle nesting of generics
+            if (c == '<') {
+                buf.append('<');
+                i = last = qualifiedNameInner(opt, r, buf, ++last, !opt.showQualifiedGenerics);
+                buf.append('>');
+            } else if (c == '>')
+                return i + 1;
+        }
+        buf.append(r, last, r.length());
+        return r.length();
+    }
+
+    /**
+     * Print the visibility adornment of element e prefixed by any stereotypes
+     */
+    private String visibility(Options opt, Element e) {
+        return opt.showVisibility ? Visibility.get(e).symbol : " ";
+    }
+
+    /** Print the method parameter p */
+    private String parameter(Options opt, List<? extends VariableElement> params) {
+        StringBuilder par = new StringBuilder(1000);
+        for (int i = 0; i < params.size(); i++) {
+            par.append(params.get(i).getSimpleName() + typeAnnotation(opt, params.get(i).asType()));
+            if (i + 1 < params.size()) {
+                par.append(", ");
+            }
+        }
+        return par.toString();
+    }
+
+    /** Print a a basic type t */
+    private String type(Options opt, TypeMirror t, boolean generics) {
+        return ((generics ? opt.showQualifiedGenerics : opt.showQualified) ? //
+                ElementUtil.getQualifiedName(types, t) : ElementUtil.getSimpleName(types, t)) //
+                + (opt.hideGenerics ? "" : typeParameters(opt, t instanceof DeclaredType ? (DeclaredType) t : null));
+    }
+
+    /** Print the parameters of the parameterized type t */
+    private String typeParameters(Options opt, DeclaredType t) {
+        if (t == null || t.getTypeArguments() == null || t.getTypeArguments().isEmpty()) {
+            return "";
+        }
+        StringBuffer tp = new StringBuffer(1000).append("&lt;");
+        List<? extends TypeMirror> args = t.getTypeArguments();
+        for (int i = 0; i < args.size(); i++) {
+            tp.append(type(opt, args.get(i), true));
+            if (i != args.size() - 1) {
+                tp.append(", ");
+            }
+        }
+        return tp.append("&gt;").toString();
+    }
+
+    /** Annotate an field/argument with its type t */
+    private String typeAnnotation(Options opt, TypeMirror t) {
+        if (t.getKind() == TypeKind.VOID) {
+            return "";
+        }
+        return " : " + type(opt, t, false) + ElementUtil.dimensions(t);
+    }
+
+    /** Print the class's attributes fd */
+    private void attributes(Options opt, List<VariableElement> fd) {
+        for (VariableElement f : fd) {
+            stereotype(opt, f, Align.LEFT);
+            String att = visibility(opt, f) + f.getSimpleName();
+            if (opt.showType) {
+                att += typeAnnotation(opt, f.asType());
+            }
+            tableLine(Align.LEFT, att);
+            tagvalue(opt, f);
+        }
+    }
+
+    /** Print the class's operations m */
+    private boolean operations(Options opt, List<ExecutableElement> m) {
+        boolean printed = false;
+        for (ExecutableElement md : m) {
+            Name name = "<init>".equals(md.getSimpleName().toString()) ? ElementUtil.containingTypeElement(md).getSimpleName() : md.getSimpleName();
+            stereotype(opt, md, Align.LEFT);
+            String op = visibility(opt, md) + name +
+                    (opt.showType ? "(" + parameter(opt, md.getParameters()) + ")" + typeAnnotation(opt, md.getReturnType()) : "()");
+            tableLine(Align.LEFT, (md.getModifiers().contains(Modifier.ABSTRACT) ? Font.ABSTRACT : Font.NORMAL).wrap(opt, op));
+            printed = true;
+
+            tagvalue(opt, md);
+        }
+        return printed;
+    }
+
+    /** Print the common class node's properties */
+    private void nodeProperties(Options opt) {
+        Options def = opt.getGlobalOptions();
+        if (opt.nodeFontName != def.nodeFontName) {
+            w.print(",fontname=\"").print(opt.nodeFontName).print('"');
+        }
+        if (opt.nodeFontColor != def.nodeFontColor) {
+            w.print(",fontcolor=\"").print(opt.nodeFontColor).print('"');
+        }
+        if (opt.nodeFontSize != def.nodeFontSize) {
+            w.print(",fontsize=").print(opt.nodeFontSize);
+        }
+        w.print(opt.shape.style);
+        w.print("];").println();
+    }
+
+    /**
+     * Return as a string the tagged values associated with c
+     *
+     * @param opt      the Options used to guess font names
+     * @param c        the Doc entry to look for @tagvalue
+     * @param prevterm the termination string for the previous element
+     * @param term     the termination character for each tagged value
+     */
+    private void tagvalue(Options opt, Element c) {
+        List<String> texts = tags.getTag(c, "tagvalue");
+        if (texts.isEmpty()) {
+            return;
+        }
+
+        for (String tag : texts) {
+            String t[] = tokenize(tag);
+            if (t.length != 2) {
+                System.err.println("@tagvalue expects two fields: " + tag);
+                continue;
+            }
+            tableLine(Align.RIGHT, Font.TAG.wrap(opt, "{" + t[0] + " = " + t[1] + "}"));
+        }
+    }
+
+    /**
+     * Return as a string the stereotypes associated with c terminated by the escape character term
+     */
+    private void stereotype(Options opt, Element c, Align align) {
+        List<String> texts = tags.getTag(c, "stereotype");
+        if (texts.isEmpty()) {
+            return;
+        }
+        for (String tag : texts) {
+            String t[] = tokenize(tag);
+            if (t.length != 1) {
+                System.err.println("@stereotype expects one field: " + tag);
+                continue;
+            }
+            tableLine(align, guilWrap(opt, t[0]));
+        }
+    }
+
+    public void printClass(Options opt, ClassNode node, String alias, String url, List<VariableElement> fields,
+            List<ExecutableElement> constructors, List<ExecutableElement> methods) {
+        TypeElement c = node.getElement();
+        String className = c.toString();
+        // Associate classname's alias
+        w.print(linePrefix).print("// ").print(className).println();
+        // Create label
+        w.print(linePrefix).print(alias).print(" [label=");
+
+        boolean showMembers = (opt.showAttributes && !node.getFields().isEmpty())
+                || (c.getKind() == ElementKind.ENUM && opt.showEnumConstants && !node.getEnumConstants().isEmpty())
+                || (opt.showOperations && !node.getMethods().isEmpty())
+                || (opt.showConstructors && !node.getConstructors().isEmpty());
+
+        externalTableStart(opt, c.getQualifiedName(), url);
+
+        firstInnerTableStart(opt);
+        if (c.getKind() == ElementKind.INTERFACE) {
+            tableLine(Align.CENTER, guilWrap(opt, "interface"));
+        }
+        if (c.getKind() == ElementKind.ENUM) {
+            tableLine(Align.CENTER, guilWrap(opt, "enumeration"));
+        }
+        stereotype(opt, c, Align.CENTER);
+        Font font = c.getModifiers().contains(Modifier.ABSTRACT) && c.getKind() != ElementKind.INTERFACE ? Font.CLASS_ABSTRACT : Font.CLASS;
+        String qualifiedName = qualifiedName(opt, c.getQualifiedName(), c.getTypeParameters());
+        int idx = splitPackageClass(qualifiedName);
+        if (opt.showComment) {
+            tableLine(Align.LEFT, Font.CLASS.wrap(opt, htmlNewline(escape(tags.getComment(c)))));
+        } else if (opt.postfixPackage && idx > 0 && idx < (qualifiedName.length() - 1)) {
+            String packageName = qualifiedName.substring(0, idx);
+            String cn = qualifiedName.substring(idx + 1);
+            tableLine(Align.CENTER, font.wrap(opt, escape(cn)));
+            tableLine(Align.CENTER, Font.PACKAGE.wrap(opt, packageName));
+        } else {
+            tableLine(Align.CENTER, font.wrap(opt, escape(qualifiedName)));
+        }
+        tagvalue(opt, c);
+        firstInnerTableEnd(opt);
+
+        /*
+         * Warning: The boolean expressions guarding innerTableStart() in this block,
+         * should match those in the code block above marked:
+         * "Calculate the number of innerTable rows we will emmit"
+         */
+        if (showMembers) {
+            if (opt.showAttributes) {
+                innerTableStart();
+                // if there are no fields, print an empty line to generate proper HTML
+                if (node.getFields().size() == 0) {
+                    tableLine(Align.LEFT, "");
+                } else {
+                    attributes(opt, fields);
+                }
+                innerTableEnd();
+            } else if (c.getKind() != ElementKind.ENUM && (opt.showConstructors || opt.showOperations)) {
+                // show an emtpy box if we don't show attributes but
+                // we show operations
+                innerTableStart();
+                tableLine(Align.LEFT, "");
+                innerTableEnd();
+            }
+            if (c.getKind() == ElementKind.ENUM && opt.showEnumConstants) {
+                innerTableStart();
+                List<VariableElement> ecs = node.getEnumConstants();
+                // if there are no constants, print an empty line to generate proper HTML
+                if (ecs.size() == 0) {
+                    tableLine(Align.LEFT, "");
+                } else {
+                    for (VariableElement fd : ecs) {
+                        tableLine(Align.LEFT, fd.getSimpleName());
+                    }
+                }
+                innerTableEnd();
+            }
+            if (c.getKind() != ElementKind.ENUM && (opt.showConstructors || opt.showOperations)) {
+                innerTableStart();
+                boolean printedLines = false;
+                if (opt.showConstructors) {
+                    printedLines |= operations(opt, constructors);
+                }
+                if (opt.showOperations) {
+                    printedLines |= operations(opt, methods);
+                }
+
+                if (!printedLines) {
+                    // if there are no operations nor constructors,
+                    // print an empty line to generate proper HTML
+                    tableLine(Align.LEFT, "");
+                }
+
+                innerTableEnd();
+            }
+        }
+        externalTableEnd();
+        if (url != null) {
+            w.print(", URL=\"").print(url).print('"');
+        }
+        nodeProperties(opt);
+
+        // If needed, add a note for this node
+        int ni = 0;
+        for (String t : tags.getTag(c, "note")) {
+            String noteName = "n" + ni + "c" + alias;
+            w.print(linePrefix).print("// Note annotation\n");
+            w.print(linePrefix).print(noteName).print(" [label=");
+            externalTableStart(UmlGraph.getCommentOptions(), c.getQualifiedName(), url);
+            innerTableStart();
+            tableLine(Align.LEFT, Font.CLASS.wrap(UmlGraph.getCommentOptions(), htmlNewline(escape(t))));
+            innerTableEnd();
+            externalTableEnd();
+            nodeProperties(UmlGraph.getCommentOptions());
+            w.print(linePrefix).print(noteName).print(" -> ").print(alias).print("[arrowhead=none];\n");
+            ni++;
+        }
+    }
+
+    public void printExternalClass(Options opt, Name className, String alias, String url) {
+        w.print(linePrefix).print("// ").print(className).println();
+        w.print(linePrefix).print(alias).print("[label=");
+        externalTableStart(opt, className, url);
+        innerTableStart();
+        String qualifiedName = qualifiedName(opt, className, null);
+        int startTemplate = qualifiedName.indexOf('<');
+        int idx = qualifiedName.lastIndexOf('.', startTemplate < 0 ? qualifiedName.length() - 1 : startTemplate);
+        if (opt.postfixPackage && idx > 0 && idx < (qualifiedName.length() - 1)) {
+            String packageName = qualifiedName.substring(0, idx);
+            String cn = qualifiedName.substring(idx + 1);
+            tableLine(Align.CENTER, Font.CLASS.wrap(opt, escape(cn)));
+            tableLine(Align.CENTER, Font.PACKAGE.wrap(opt, packageName));
+        } else {
+            tableLine(Align.CENTER, Font.CLASS.wrap(opt, escape(qualifiedName)));
+        }
+        innerTableEnd();
+        externalTableEnd();
+        if (className == null || className.length() == 0)
+            w.print(",URL=\"").print(url).print('"');
+        nodeProperties(opt);
+    }
+
+    public void printRelation(Options opt, RelationType rt, Name fromName, String fromAlias, Name toName,
+            String toAlias, String tailLabel, String label, String headLabel) {
+        tailLabel = (tailLabel != null && !tailLabel.isEmpty()) ? ",taillabel=\"" + tailLabel + "\"" : "";
+        label = (label != null && !label.isEmpty()) ? ",label=\"" + guillemize(opt, label) + "\"" : "";
+        headLabel = (headLabel != null && !headLabel.isEmpty()) ? ",headlabel=\"" + headLabel + "\"" : "";
+        boolean unLabeled = tailLabel.isEmpty() && label.isEmpty() && headLabel.isEmpty();
+
+        String n1 = fromAlias, n2 = toAlias;
+        // For ranking we need to output extends/implements backwards.
+        if (rt.backorder) { // Swap:
+            n1 = toAlias;
+            n2 = fromAlias;
+            String tmp = tailLabel;
+            tailLabel = headLabel;
+            headLabel = tmp;
+        }
+        Options def = opt.getGlobalOptions();
+        // print relation
+        w.print(linePrefix).print("// ").print(fromName).print(' ').print(rt.lower).print(' ').print(toName).println();
+        w.print(linePrefix).print(n1).print(" -> ").print(n2).print(" [").print(rt.style);
+        if (opt.edgeColor != def.edgeColor) {
+            w.print(",color=\"").print(opt.edgeColor).print('"');
+        }
+        if (!unLabeled) {
+            if (opt.edgeFontName != def.edgeFontName) {
+                w.print(",fontname=\"").print(opt.edgeFontName).print('"');
+            }
+            if (opt.edgeFontColor != def.edgeFontColor) {
+                w.print(",fontcolor=\"").print(opt.edgeFontColor).print('"');
+            }
+            if (opt.edgeFontSize != def.edgeFontSize) {
+                w.print(",fontsize=").print(opt.edgeFontSize);
+            }
+        }
+        w.print(tailLabel).print(label).print(headLabel).print("];").println();
+    }
+
+    /**
+     * Dot prologue
+     *
+     * @throws IOException
+     */
+    public void prologue(Options opt) throws IOException {
+        OutputStream os;
+
+        if (opt.outputFileName.equals("-")) {
+            os = System.out;
+        } else {
+            // prepare output file. Use the output file name as a full path unless the
+            // output
+            // directory is specified
+            File file = new File(opt.outputDirectory, opt.outputFileName);
+            // make sure the output directory are there, otherwise create them
+            if (file.getParentFile() != null && !file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+            os = new FileOutputStream(file);
+        }
+
+        // print prologue
+        w = new DotWriter(os, opt.outputEncoding);
+        w.print("#!/usr/local/bin/dot\n" + "#\n" + "# Class diagram \n" + "# Generated by UMLGraph version "
+                + Version.VERSION + " (http://www.spinellis.gr/umlgraph/)\n" + "#\n\n" + "digraph G {\n" + linePrefix
+                + "graph [fontnames=\"svg\"]\n" + linePrefix + "edge [fontname=\"" + opt.edgeFontName + "\",fontsize="
+                + fmt(opt.edgeFontSize) + ",labelfontname=\"" + opt.edgeFontName + "\",labelfontsize="
+                + fmt(opt.edgeFontSize) + ",color=\"" + opt.edgeColor + "\"];\n" + linePrefix + "node [fontname=\""
+                + opt.nodeFontName + "\",fontcolor=\"" + opt.nodeFontColor + "\",fontsize=" + fmt(opt.nodeFontSize)
+                + ",shape=plaintext,margin=0,width=0,height=0];").println();
+
+        w.print(linePrefix + "nodesep=" + opt.nodeSep + ";").println();
+        w.print(linePrefix + "ranksep=" + opt.rankSep + ";").println();
+        if (opt.horizontal) {
+            w.print(linePrefix + "rankdir=LR;").println();
+        }
+        if (opt.bgColor != null) {
+            w.print(linePrefix + "bgcolor=\"" + opt.bgColor + "\";\n").println();
+        }
+    }
+
+    /** Dot epilogue */
+    public void epilogue() {
+        w.print("}\n").println();
+        w.close();
+    }
+
+    private void externalTableStart(Options opt, Name name, String url) {
+        w.print("<<table title=\"").print(name).print("\" border=\"0\" cellborder=\"").print(opt.shape.cellBorder())
+                .print("\" cellspacing=\"0\" cellpadding=\"2\"");
+        if (opt.nodeFillColor != null) {
+            w.print(" bgcolor=\"").print(opt.nodeFillColor).print('"');
+        }
+        if (url != null) {
+            w.print(" href=\"").print(url).print("\" target=\"_parent\"");
+        }
+        w.print('>').print(linePostfix);
+    }
+
+    private void externalTableEnd() {
+        w.print(linePrefix).print(linePrefix).print("</table>>");
+    }
+
+    private void innerTableStart() {
+        w.print(linePrefix).print(linePrefix).print("<tr><td><table border=\"0\" cellspacing=\"0\" cellpadding=\"1\">")
+                .print(linePostfix);
+    }
+
+    /**
+     * Start the first inner table of a class.
+     */
+    private void firstInnerTableStart(Options opt) {
+        w.print(linePrefix).print(linePrefix).print("<tr>").print(opt.shape.extraColumn())
+                .print("<td><table border=\"0\" cellspacing=\"0\" cellpadding=\"1\">").print(linePostfix);
+    }
+
+    private void innerTableEnd() {
+        w.print(linePrefix).print(linePrefix).print("</table></td></tr>").print(linePostfix);
+    }
+
+    /**
+     * End the first inner table of a class.
+     */
+    private void firstInnerTableEnd(Options opt) {
+        w.print(linePrefix).print(linePrefix).print("</table></td>").print(opt.shape.extraColumn()).print("</tr>")
+                .print(linePostfix);
+    }
+
+    private void tableLine(Align align, CharSequence text) {
+        w.print(linePrefix).print(linePrefix) //
+                .print("<tr><td align=\"").print(align.lower).print("\" balign=\"").print(align.lower).print("\"> ") //
+                .print(text) // MAY contain markup!
+                .print(" </td></tr>").print(linePostfix);
+    }
+}
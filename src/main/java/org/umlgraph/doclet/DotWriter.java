@@ -0,0 +1,179 @@
+package org.umlgraph.doclet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+/**
+ * Writes the text of a dot file to a stream, a fragment at a time.
+ * <p>
+ * The fragments of a line are appended one after the other straight into a
+ * character buffer, instead of being concatenated into strings first. The
+ * buffer is encoded in the output charset, into a byte buffer, when it fills
+ * up, by an encoder that is created once. Both buffers are reused for the
+ * whole file, so writing a line allocates nothing. Characters that cannot be
+ * encoded are replaced, as with an {@link java.io.OutputStreamWriter}.
+ * <p>
+ * Like a {@link java.io.PrintWriter}, the writer does not throw I/O
+ * exceptions; {@link #checkError()} tells whether one occurred.
+ */
+class DotWriter {
+    private static final int BUFFER_SIZE = 8192;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final OutputStream out;
+    private final CharsetEncoder encoder;
+    private final char[] chars = new char[BUFFER_SIZE];
+    private final CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private final ByteBuffer bytes;
+    /** The number of characters in the buffer */
+    private int count;
+    /** Scratch space for formatting numbers */
+    private final char[] digits = new char[20];
+    private boolean error;
+
+    /**
+     * Create a writer
+     *
+     * @param out         the stream written to
+     * @param charsetName the name of the output charset
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    DotWriter(OutputStream out, String charsetName) throws UnsupportedEncodingException {
+        Charset charset;
+        try {
+            charset = Charset.forName(charsetName);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new UnsupportedEncodingException(charsetName);
+        }
+        this.out = out;
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate((int) Math.ceil(BUFFER_SIZE * encoder.maxBytesPerChar()));
+    }
+
+    /** Append a character */
+    DotWriter print(char c) {
+        if (count == chars.length) {
+            encode(false);
+        }
+        chars[count++] = c;
+        return this;
+    }
+
+    /** Append a character sequence; null is written as "null" */
+    DotWriter print(CharSequence s) {
+        if (s == null) {
+            return print("null");
+        }
+        int length = s.length();
+        if (s instanceof String) {
+            String string = (String) s;
+            for (int i = 0; i < length;) {
+                if (count == chars.length) {
+                    encode(false);
+                }
+                int n = Math.min(length - i, chars.length - count);
+                string.getChars(i, i + n, chars, count);
+                count += n;
+                i += n;
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                print(s.charAt(i));
+            }
+        }
+        return this;
+    }
+
+    /** Append a number, without a fractional part when it has none, as StringUtil.fmt does */
+    DotWriter print(double val) {
+        if (val != Math.round(val)) {
+            return print(Double.toString(val));
+        }
+        long n = (long) val;
+        if (n == Long.MIN_VALUE) {
+            return print(Long.toString(n));
+        }
+        if (n < 0) {
+            print('-');
+            n = -n;
+        }
+        int i = digits.length;
+        do {
+            digits[--i] = (char) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        while (i < digits.length) {
+            print(digits[i++]);
+        }
+        return this;
+    }
+
+    /** Terminate the line */
+    DotWriter println() {
+        return print(LINE_SEPARATOR);
+    }
+
+    /** Encode the characters of the buffer, keeping a trailing unpaired surrogate */
+    private void encode(boolean endOfInput) {
+        charBuffer.limit(count).position(0);
+        while (encoder.encode(charBuffer, bytes, endOfInput).isOverflow()) {
+            writeBytes();
+        }
+        if (endOfInput) {
+            while (encoder.flush(bytes) == CoderResult.OVERFLOW) {
+                writeBytes();
+            }
+        }
+        int remaining = charBuffer.remaining();
+        System.arraycopy(chars, charBuffer.position(), chars, 0, remaining);
+        count = remaining;
+    }
+
+    private void writeBytes() {
+        if (!error) {
+            try {
+                out.write(bytes.array(), 0, bytes.position());
+            } catch (IOException e) {
+                error = true;
+            }
+        }
+        bytes.clear();
+    }
+
+    /** Write out the characters appended so far, and flush the stream */
+    void flush() {
+        encode(false);
+        writeBytes();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /** Write out the characters appended so far, and close the stream */
+    void close() {
+        encode(true);
+        writeBytes();
+        try {
+            out.close();
+        } catch (IOException e) {
+            error = true;
+        }
+    }
+
+    /** Return true if an I/O error occurred */
+    boolean checkError() {
+        return error;
+    }
+}
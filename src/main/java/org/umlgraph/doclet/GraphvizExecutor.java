@@ -0,0 +1,422 @@
+package org.umlgraph.doclet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.Diagnostic;
+
+import jdk.javadoc.doclet.Reporter;
+
+/**
+ * Runs Graphviz dot on the diagrams of a UmlGraphDoc run.
+ * <p>
+ * Diagrams are queued and laid out by a fixed number of runners, each running
+ * one dot process at a time. A runner passes all the diagrams waiting in the
+ * queue, up to the batch size, to a single dot invocation using
+ * <code>-O</code>, so that a backlog of diagrams costs few process startups.
+ * The standard error of dot is drained by a separate thread. A process running
+ * longer than the time allowed for its diagrams is killed. The outputs that a
+ * failed batch completed are kept, and its other diagrams are retried one at a
+ * time. If dot cannot be started, no more diagrams are laid out. With a {@link SvgCache}, diagrams laid out by a
+ * previous run are taken from the cache without running dot.
+ * <p>
+ * The messages of dot and the wall time taken by each diagram, or by the batch
+ * it was laid out in, are reported when the executor finishes, in file name
+ * order. A message of a batch that
+ * names none of its files is reported for the batch as a whole.
+ */
+class GraphvizExecutor {
+
+    /** A diagram to lay out, along with the outcome of its layout */
+    private static class Diagram {
+        final File dotFile;
+        final File svgFile;
+        final List<String> errors = new ArrayList<>();
+        String key;
+        boolean cached;
+        long millis;
+        /** The number of diagrams of the dot process that laid it out */
+        int batchSize = 1;
+        boolean failed;
+
+        Diagram(File dotFile, File svgFile) {
+            this.dotFile = dotFile;
+            this.svgFile = svgFile;
+        }
+    }
+
+    /** The messages of a batch that could not be attributed to one of its diagrams */
+    private static class BatchErrors {
+        final List<Diagram> batch;
+        final List<String> errors;
+
+        BatchErrors(List<Diagram> batch, List<String> errors) {
+            this.batch = batch;
+            this.errors = errors;
+        }
+    }
+
+    /** The outcome of a dot invocation */
+    private static class Result {
+        List<String> errors = Collections.emptyList();
+        boolean timedOut;
+        boolean succeeded;
+    }
+
+    private static final Diagram END = new Diagram(null, null);
+
+    private final String dotExecutable;
+    private final int runnerCount;
+    private final int batchSize;
+    private final long timeoutMillis;
+    private final SvgCache cache;
+    private final BlockingQueue<Diagram> queue = new LinkedBlockingQueue<>();
+    private final List<Diagram> diagrams = new ArrayList<>();
+    private final List<BatchErrors> batchErrors = new ArrayList<>();
+    /** Why dot could not be started, once it failed to */
+    private volatile String startFailure;
+    private final AtomicInteger processes = new AtomicInteger();
+    private final ExecutorService runners;
+    private final long start = System.currentTimeMillis();
+
+    /**
+     * Create an executor for the specified dot executable
+     *
+     * @param dotExecutable the dot executable; "dot" if null
+     * @param maxProcesses  the maximum number of dot processes running at once
+     * @param batchSize     the maximum number of diagrams passed to a dot process
+     * @param timeoutMillis the time a diagram may take to lay out; 0 for no limit
+     * @param cache         the cache of diagrams laid out before; null for none
+     */
+    public GraphvizExecutor(String dotExecutable, int maxProcesses, int batchSize, long timeoutMillis,
+            SvgCache cache) {
+        this.dotExecutable = dotExecutable == null ? "dot" : dotExecutable;
+        this.runnerCount = Math.max(1, maxProcesses);
+        this.batchSize = Math.max(1, batchSize);
+        this.timeoutMillis = timeoutMillis;
+        this.cache = cache;
+        this.runners = Executors.newFixedThreadPool(runnerCount);
+        for (int i = 0; i < runnerCount; i++) {
+            runners.execute(this::runBatches);
+        }
+    }
+
+    /**
+     * Queue the layout of the dot file into the svg file. Once dot failed to
+     * start, the diagram is marked as failed instead.
+     */
+    public void submit(File dotFile, File svgFile) {
+        Diagram diagram = new Diagram(dotFile, svgFile);
+        synchronized (diagrams) {
+            diagrams.add(diagram);
+        }
+        if (cache != null) {
+            try {
+                diagram.key = cache.key(dotFile);
+            } catch (IOException e) {
+                diagram.errors.add("Cannot read " + dotFile + ": " + e);
+            }
+            if (diagram.key != null && cache.fetch(diagram.key, svgFile)) {
+                diagram.cached = true;
+                return;
+            }
+        }
+        if (startFailure != null) {
+            diagram.failed = true;
+            return;
+        }
+        queue.add(diagram);
+    }
+
+    /**
+     * Wait for all the submitted diagrams to be laid out, and report the
+     * messages of dot and the time taken by each diagram.
+     *
+     * @return the images of the diagrams that failed or timed out, whose
+     *         files may be missing or left from a previous run
+     */
+    public List<File> finish(Reporter reporter) {
+        for (int i = 0; i < runnerCount; i++) {
+            queue.add(END);
+        }
+        runners.shutdown();
+        try {
+            while (!runners.awaitTermination(1, TimeUnit.MINUTES))
+                ;
+        } catch (InterruptedException e) {
+            runners.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        List<Diagram> done;
+        synchronized (diagrams) {
+            done = new ArrayList<>(diagrams);
+        }
+        done.sort(Comparator.comparing(d -> d.dotFile.getPath()));
+        if (startFailure != null) {
+            reporter.print(Diagnostic.Kind.WARNING, startFailure);
+        }
+        int laidOut = 0;
+        List<File> failed = new ArrayList<>();
+        for (Diagram diagram : done) {
+            for (String line : diagram.errors) {
+                reporter.print(Diagnostic.Kind.WARNING, line);
+            }
+            if (diagram.cached) {
+                reporter.print(Diagnostic.Kind.NOTE, "Graphviz layout of " + diagram.dotFile + " taken from the cache");
+                continue;
+            }
+            if (diagram.failed) {
+                failed.add(diagram.svgFile);
+                if (startFailure == null) {
+                    reporter.print(Diagnostic.Kind.WARNING, "Errors running Graphviz on " + diagram.dotFile);
+                }
+            } else {
+                laidOut++;
+                String batch = diagram.batchSize > 1 ? " in a batch of " + diagram.batchSize + " diagrams" : "";
+                reporter.print(Diagnostic.Kind.NOTE,
+                        "Graphviz laid out " + diagram.dotFile + batch + " in " + diagram.millis + " ms");
+            }
+        }
+        List<BatchErrors> batches;
+        synchronized (batchErrors) {
+            batches = new ArrayList<>(batchErrors);
+        }
+        batches.sort(Comparator.comparing(b -> b.batch.get(0).dotFile.getPath()));
+        for (BatchErrors batch : batches) {
+            StringBuilder files = new StringBuilder();
+            for (Diagram diagram : batch.batch) {
+                files.append(files.length() == 0 ? "" : ", ").append(diagram.dotFile);
+            }
+            reporter.print(Diagnostic.Kind.WARNING, "Graphviz messages for the batch of " + files + ":");
+            for (String line : batch.errors) {
+                reporter.print(Diagnostic.Kind.WARNING, line);
+            }
+        }
+        if (laidOut > 0 && startFailure == null) {
+            reporter.print(Diagnostic.Kind.NOTE, "Graphviz laid out " + laidOut + " diagrams with " + processes.get()
+                    + " dot processes in " + (System.currentTimeMillis() - start) + " ms");
+        }
+        if (cache != null) {
+            cache.evict();
+            reporter.print(Diagnostic.Kind.NOTE, cache.toString());
+        }
+        return failed;
+    }
+
+    /** Lay out batches of queued diagrams until the end marker is met */
+    private void runBatches() {
+        List<Diagram> batch = new ArrayList<>();
+        try {
+            for (;;) {
+                Diagram first = queue.take();
+                if (first == END) {
+                    return;
+                }
+                batch.clear();
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                boolean end = false;
+                while (batch.remove(END)) {
+                    end = true;
+                    queue.add(END);
+                }
+                layOut(batch);
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void layOut(List<Diagram> batch) {
+        if (batch.size() == 1) {
+            layOut(batch.get(0));
+            return;
+        }
+
+        List<String> command = new ArrayList<>(List.of(dotExecutable, "-Tsvg", "-O"));
+        for (Diagram diagram : batch) {
+            // an output left by an interrupted run would pass for a complete one
+            output(diagram).delete();
+            command.add(diagram.dotFile.getAbsolutePath());
+        }
+        long batchStart = System.currentTimeMillis();
+        Result result = execute(command, timeoutMillis * batch.size());
+        // the time of each diagram cannot be told apart from that of the batch
+        long batchMillis = System.currentTimeMillis() - batchStart;
+        List<Diagram> retried = new ArrayList<>();
+        if (!result.succeeded) {
+            // dot writes the outputs in turn, so an output is complete once the
+            // next one exists; the diagrams without a complete output are
+            // retried one at a time, each with the time allowed for it
+            for (int i = 0; i < batch.size(); i++) {
+                if (!output(batch.get(i)).exists() || i + 1 == batch.size()
+                        || !output(batch.get(i + 1)).exists()) {
+                    retried.add(batch.get(i));
+                }
+            }
+        }
+        attributeErrors(batch, result.errors, retried);
+        for (Diagram diagram : batch) {
+            if (retried.contains(diagram)) {
+                output(diagram).delete();
+                layOut(diagram);
+                continue;
+            }
+            diagram.millis = batchMillis;
+            diagram.batchSize = batch.size();
+            install(diagram);
+        }
+    }
+
+    /**
+     * Return the file where dot writes the output of a diagram, before it is
+     * moved in place: x.dot gives x.dot.svg, as with dot -O
+     */
+    private static File output(Diagram diagram) {
+        return new File(diagram.dotFile.getAbsolutePath() + ".svg");
+    }
+
+    /**
+     * Give each message of a batch to the diagram whose file it names, keeping
+     * the others as the messages of the batch. The messages of the diagrams
+     * laid out again are left out, as their retry repeats them.
+     */
+    private void attributeErrors(List<Diagram> batch, List<String> errors, List<Diagram> retried) {
+        List<String> unattributed = new ArrayList<>();
+        for (String line : errors) {
+            Diagram owner = null;
+            for (Diagram diagram : batch) {
+                String path = diagram.dotFile.getAbsolutePath();
+                if (line.contains(path) && (owner == null || path.length() > owner.dotFile.getAbsolutePath().length())) {
+                    owner = diagram;
+                }
+            }
+            if (owner != null) {
+                if (!retried.contains(owner)) {
+                    owner.errors.add(line);
+                }
+            } else {
+                unattributed.add(line);
+            }
+        }
+        if (!unattributed.isEmpty()) {
+            synchronized (batchErrors) {
+                batchErrors.add(new BatchErrors(new ArrayList<>(batch), unattributed));
+            }
+        }
+    }
+
+    private void layOut(Diagram diagram) {
+        if (startFailure != null) {
+            diagram.failed = true;
+            return;
+        }
+        // the image may be a link to a cache entry, which dot would overwrite
+        // in place, so dot writes a file of its own
+        File output = output(diagram);
+        output.delete();
+        long diagramStart = System.currentTimeMillis();
+        Result result = execute(List.of(dotExecutable, "-Tsvg", "-o", output.getAbsolutePath(),
+                diagram.dotFile.getAbsolutePath()), timeoutMillis);
+        diagram.millis = System.currentTimeMillis() - diagramStart;
+        diagram.errors.addAll(result.errors);
+        if (result.timedOut) {
+            diagram.errors.add("Graphviz did not finish within " + timeoutMillis / 1000 + " s");
+        }
+        diagram.failed = !result.succeeded;
+        if (diagram.failed) {
+            output.delete();
+        } else {
+            install(diagram);
+        }
+    }
+
+    /**
+     * Move the output of dot in place of the diagram's image, replacing rather
+     * than overwriting the image, and add it to the cache
+     */
+    private void install(Diagram diagram) {
+        try {
+            Files.move(output(diagram).toPath(), diagram.svgFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            diagram.errors.add(e.toString());
+            diagram.failed = true;
+            return;
+        }
+        if (diagram.key != null) {
+            cache.store(diagram.key, diagram.svgFile);
+        }
+    }
+
+    /**
+     * Run dot with the specified command line, killing it if it takes longer
+     * than the timeout.
+     */
+    private Result execute(List<String> command, long timeout) {
+        Result result = new Result();
+        List<String> errors = new ArrayList<>();
+        Process p;
+        try {
+            p = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        } catch (IOException e) {
+            if (startFailure == null) {
+                startFailure = "Cannot run Graphviz " + dotExecutable + ": " + e.getMessage()
+                        + "; ensure that dot is in your path and that its path does not contain spaces";
+            }
+            return result;
+        }
+        processes.incrementAndGet();
+        Thread drainer = new Thread(() -> drain(p.getErrorStream(), errors), "dot stderr");
+        drainer.setDaemon(true);
+        drainer.start();
+        try {
+            if (timeout > 0 && !p.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                p.destroyForcibly();
+                p.waitFor();
+                result.timedOut = true;
+            } else {
+                result.succeeded = p.waitFor() == 0;
+            }
+            drainer.join();
+        } catch (InterruptedException e) {
+            p.destroyForcibly();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (errors) {
+            result.errors = new ArrayList<>(errors);
+        }
+        return result;
+    }
+
+    private static void drain(InputStream stream, List<String> lines) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (lines) {
+                    lines.add(line);
+                }
+            }
+        } catch (IOException e) {
+            // the process is gone
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+
+import org.umlgraph.doclet.util.ElementUtil;
+
+/**
+ * Run scoped index of the type hierarchy, for the matchers that look for a
+ * class among the ancestors of another.
+ * <p>
+ * Every type met is given a small integer id, and its transitive superclasses
+ * and supertypes are computed once, the first time they are asked for, as
+ * sets of ids. A type belongs to both of its own sets. Library types are
+ * indexed as they are reached, like the classes of the run. As computing the
+ * sets reads javac's model, the index is guarded by the lock of the run's
+ * context.
+ */
+class HierarchyIndex {
+
+    private final Map<TypeElement, Integer> ids = new HashMap<>();
+    private final List<TypeElement> types = new ArrayList<>();
+    private final List<BitSet> superclasses = new ArrayList<>();
+    private final List<BitSet> supertypes = new ArrayList<>();
+
+    private final Object lock;
+
+    HierarchyIndex(Object lock) {
+        this.lock = lock;
+    }
+
+    /** Return the id of the specified type */
+    int getId(TypeElement type) {
+        synchronized (lock) {
+            Integer id = ids.get(type);
+            if (id == null) {
+                id = types.size();
+                ids.put(type, id);
+                types.add(type);
+                superclasses.add(null);
+                supertypes.add(null);
+            }
+            return id;
+        }
+    }
+
+    /** Return the type with the specified id */
+    TypeElement getType(int id) {
+        synchronized (lock) {
+            return types.get(id);
+        }
+    }
+
+    /**
+     * Return the ids of the type and of all of its superclasses. The set must
+     * not be modified.
+     */
+    BitSet getSuperclasses(TypeElement type) {
+        synchronized (lock) {
+            int id = getId(type);
+            BitSet result = superclasses.get(id);
+            if (result == null) {
+                result = new BitSet();
+                TypeElement superclass = ElementUtil.getTypeElement(type.getSuperclass());
+                if (superclass != null) {
+                    result.or(getSuperclasses(superclass));
+                }
+                result.set(id);
+                superclasses.set(id, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Return the ids of the type and of all of its superclasses and
+     * interfaces, direct or inherited. The set must not be modified.
+     */
+    BitSet getSupertypes(TypeElement type) {
+        synchronized (lock) {
+            int id = getId(type);
+            BitSet result = supertypes.get(id);
+            if (result == null) {
+                result = new BitSet();
+                for (TypeMirror iface : type.getInterfaces()) {
+                    TypeElement i = ElementUtil.getTypeElement(iface);
+                    if (i != null) {
+                        result.or(getSupertypes(i));
+                    }
+                }
+                TypeElement superclass = ElementUtil.getTypeElement(type.getSuperclass());
+                if (superclass != null) {
+                    result.or(getSupertypes(superclass));
+                }
+                result.set(id);
+                supertypes.set(id, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The classes having a superclass, or any supertype, accepted by a
+     * predicate. The predicate is evaluated once per type, and the answer for
+     * a class is remembered, so that asking again is a single bit test. Not
+     * thread safe.
+     */
+    static class Match {
+        private final HierarchyIndex index;
+        private final boolean interfaces;
+        private final Predicate<TypeElement> accept;
+        /** The types the predicate was evaluated for, and the ones it accepted */
+        private final BitSet tested = new BitSet(), accepted = new BitSet();
+        /** The classes answered for, and the ones that matched */
+        private final BitSet known = new BitSet(), matched = new BitSet();
+
+        /**
+         * @param index      the hierarchy index of the run
+         * @param interfaces true to look at all of the supertypes, false to look
+         *                   at the superclasses only
+         * @param accept     the predicate for the ancestors looked for
+         */
+        Match(HierarchyIndex index, boolean interfaces, Predicate<TypeElement> accept) {
+            this.index = index;
+            this.interfaces = interfaces;
+            this.accept = accept;
+        }
+
+        boolean matches(TypeElement cd) {
+            int id = index.getId(cd);
+            if (!known.get(id)) {
+                BitSet ancestors = interfaces ? index.getSupertypes(cd) : index.getSuperclasses(cd);
+                for (int i = ancestors.nextSetBit(0); i >= 0; i = ancestors.nextSetBit(i + 1)) {
+                    if (!tested.get(i)) {
+                        tested.set(i);
+                        if (accept.test(index.getType(i))) {
+                            accepted.set(i);
+                        }
+                    }
+                }
+                if (ancestors.intersects(accepted)) {
+                    matched.set(id);
+                }
+                known.set(id);
+            }
+            return matched.get(id);
+        }
+    }
+}
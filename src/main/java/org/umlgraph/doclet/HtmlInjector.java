@@ -0,0 +1,141 @@
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Predicate;
+
+/**
+ * Inserts text in an HTML file after the first line that passes a test,
+ * in a single pass over the file.
+ * <p>
+ * The file is read through a bounded buffer and split into lines on the
+ * newline byte, so its encoding must be ASCII compatible, as the encodings
+ * javadoc writes are. Only the lines up to the insertion point are decoded.
+ * The new file is made of the untouched prefix and suffix of the old one,
+ * copied with channel transfers, around the inserted text, and replaces the
+ * old file atomically.
+ */
+class HtmlInjector {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Insert the text after the first line of the file that passes the
+     * insertion point test.
+     *
+     * @param htmlFile    the file to alter
+     * @param charset     the encoding of the file
+     * @param insertPoint the test of the line before the insertion point
+     * @param text        the text to insert, including its line separators
+     * @return true if the text was inserted, false if no line matched
+     */
+    public static boolean insertAfter(File htmlFile, Charset charset, Predicate<String> insertPoint, String text)
+            throws IOException {
+        Path path = htmlFile.toPath();
+        Path altered = new File(htmlFile.getAbsolutePath() + ".uml").toPath();
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long insertAt = findInsertPoint(in, charset, insertPoint);
+            if (insertAt < 0) {
+                return false;
+            }
+            long size = in.size();
+            try (FileChannel out = FileChannel.open(altered, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                transfer(in, 0, insertAt, out);
+                if (insertAt == size && !endsWithNewline(in, size)) {
+                    // the matching line is the last one and lacks a line end
+                    write(out, System.lineSeparator().getBytes(charset));
+                }
+                write(out, text.getBytes(charset));
+                transfer(in, insertAt, size - insertAt, out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(altered);
+            throw e;
+        }
+        Files.move(altered, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Return the offset that follows the line end of the first line that
+     * passes the test, or -1 if no line does.
+     */
+    private static long findInsertPoint(FileChannel in, Charset charset, Predicate<String> insertPoint) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long offset = 0; // the file offset of the buffer's first byte
+        int scanned = 0; // the bytes of the buffer already searched for a newline
+        boolean eof = false;
+        while (!eof) {
+            eof = in.read(buffer) < 0;
+            byte[] bytes = buffer.array();
+            int limit = buffer.position();
+            int start = 0;
+            for (int i = scanned; i < limit; i++) {
+                if (bytes[i] == '\n') {
+                    if (matches(bytes, start, i, charset, insertPoint)) {
+                        return offset + i + 1;
+                    }
+                    start = i + 1;
+                }
+            }
+            if (eof) {
+                if (start < limit && matches(bytes, start, limit, charset, insertPoint)) {
+                    return offset + limit;
+                }
+                break;
+            }
+            // keep the incomplete last line, making room for the rest of it
+            buffer.flip();
+            buffer.position(start);
+            buffer.compact();
+            offset += start;
+            scanned = limit - start;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        return -1;
+    }
+
+    /** Test the line between start and end, excluding a carriage return */
+    private static boolean matches(byte[] bytes, int start, int end, Charset charset, Predicate<String> insertPoint) {
+        if (end > start && bytes[end - 1] == '\r') {
+            end--;
+        }
+        return insertPoint.test(new String(bytes, start, end - start, charset));
+    }
+
+    private static boolean endsWithNewline(FileChannel in, long size) throws IOException {
+        if (size == 0) {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        in.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static void write(FileChannel out, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package org.umlgraph.doclet;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+
+import org.umlgraph.doclet.UmlModel.ClassNode;
+import org.umlgraph.doclet.UmlModel.Edge;
+import org.umlgraph.doclet.util.ElementTagCache;
+import org.umlgraph.doclet.util.ElementUtil;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * Decides which diagrams of an incremental UmlGraphDoc run must be rebuilt.
+ * <p>
+ * A manifest kept in the output directory records, for every class, a
+ * fingerprint of its signature, members, doc tags and outgoing relations,
+ * along with the classes that may appear in its context diagram. A context
+ * diagram is rebuilt when its center or a class of its context, in this run or
+ * in the previous one, changed; a package diagram is rebuilt when one of its
+ * classes changed. All of the diagrams are rebuilt when the options or the
+ * UmlGraph version differ from those of the previous run, and so is any
+ * diagram whose image is missing. The classes of a diagram that Graphviz
+ * failed to lay out are left out of the manifest, so that the next run
+ * rebuilds it.
+ */
+class IncrementalBuild {
+    /** The name of the manifest in the output directory */
+    static final String MANIFEST = "umlgraph-manifest.txt";
+
+    /** The options that do not affect the diagrams */
+    private static final Set<String> RUN_OPTIONS = Set.of("OPTIONS", "threads", "dotProcesses", "dotBatchSize",
+            "dotTimeout", "dotCache", "dotCacheSize", "incremental", "linkCache", "offline", "stats");
+
+    /** The manifest entry of a class */
+    private static class Entry {
+        final String packageName;
+        final String fingerprint;
+        final Set<String> neighbours;
+
+        Entry(String packageName, String fingerprint, Set<String> neighbours) {
+            this.packageName = packageName;
+            this.fingerprint = fingerprint;
+            this.neighbours = neighbours;
+        }
+    }
+
+    private final Path manifest;
+    private final String optionsFingerprint;
+    /** The entries of the previous run; null if everything must be rebuilt */
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new TreeMap<>();
+    private final Set<String> changed = new HashSet<>();
+    private final Set<String> changedPackages = new HashSet<>();
+    /** The classes and packages of the diagrams rebuilt, by image path */
+    private final Map<String, String> contextImages = new HashMap<>();
+    private final Map<String, String> packageImages = new HashMap<>();
+    private int contextDiagrams;
+    private int packageDiagrams;
+
+    /**
+     * Fingerprint the classes of the run and compare them with those recorded
+     * by the previous run in the output folder.
+     */
+    public IncrementalBuild(DocletEnvironment root, Options opt, String outputFolder) throws IOException {
+        this.manifest = new File(outputFolder, MANIFEST).toPath();
+        this.optionsFingerprint = optionsFingerprint(opt);
+        this.previous = readManifest();
+
+        // an empty pattern matches no class, so the matcher has no center
+        ContextMatcher matcher = new ContextMatcher(root, Pattern.compile(""), opt, true);
+        UmlModel model = opt.run.getModel();
+        ElementTagCache tags = opt.run.getTags();
+        // the classes matching an include expression may appear in every
+        // context diagram, so they are neighbours of every class
+        Set<String> included = new TreeSet<>();
+        for (TypeElement cd : model.getClasses()) {
+            if (opt.getOptionsFor(root.getDocTrees(), cd).matchesIncludeExpression(cd.getQualifiedName())) {
+                included.add(cd.getQualifiedName().toString());
+            }
+        }
+        for (TypeElement cd : model.getClasses()) {
+            String name = cd.getQualifiedName().toString();
+            String packageName = ElementUtil.getPackageOf(root, cd).getQualifiedName().toString();
+            Set<String> neighbours = matcher.getNeighbours(cd);
+            if (!included.isEmpty()) {
+                neighbours = new TreeSet<>(neighbours);
+                neighbours.addAll(included);
+                neighbours.remove(name);
+            }
+            current.put(name, new Entry(packageName, fingerprint(root, tags, model.getNode(cd)), neighbours));
+        }
+
+        if (previous == null) {
+            return;
+        }
+        for (Map.Entry<String, Entry> e : current.entrySet()) {
+            Entry old = previous.get(e.getKey());
+            if (old == null || !old.fingerprint.equals(e.getValue().fingerprint)) {
+                changed.add(e.getKey());
+                changedPackages.add(e.getValue().packageName);
+            }
+        }
+        for (Map.Entry<String, Entry> e : previous.entrySet()) {
+            if (!current.containsKey(e.getKey())) {
+                changed.add(e.getKey());
+                changedPackages.add(e.getValue().packageName);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the context diagram of the specified class must be
+     * rebuilt
+     *
+     * @param svgFile the diagram's image
+     */
+    public synchronized boolean isContextStale(TypeElement cd, File svgFile) {
+        String name = cd.getQualifiedName().toString();
+        boolean stale = previous == null || !svgFile.exists() || changed.contains(name)
+                || changedNeighbour(current.get(name)) || changedNeighbour(previous.get(name));
+        if (stale) {
+            contextDiagrams++;
+            contextImages.put(svgFile.getPath(), name);
+        }
+        return stale;
+    }
+
+    /**
+     * Returns true if the diagram of the specified package must be rebuilt
+     *
+     * @param svgFile the diagram's image
+     */
+    public synchronized boolean isPackageStale(PackageElement pd, File svgFile) {
+        boolean stale = previous == null || !svgFile.exists()
+                || changedPackages.contains(pd.getQualifiedName().toString());
+        if (stale) {
+            packageDiagrams++;
+            packageImages.put(svgFile.getPath(), pd.getQualifiedName().toString());
+        }
+        return stale;
+    }
+
+    private boolean changedNeighbour(Entry entry) {
+        if (entry == null) {
+            return false;
+        }
+        for (String neighbour : entry.neighbours) {
+            if (changed.contains(neighbour)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the manifest of this run, to be compared with by the next one
+     *
+     * @param failed the images of the diagrams Graphviz failed to lay out
+     */
+    public synchronized void save(Collection<File> failed) throws IOException {
+        Set<String> failedClasses = new HashSet<>();
+        Set<String> failedPackages = new HashSet<>();
+        for (File svgFile : failed) {
+            String name = contextImages.get(svgFile.getPath());
+            if (name != null) {
+                failedClasses.add(name);
+            }
+            name = packageImages.get(svgFile.getPath());
+            if (name != null) {
+                failedPackages.add(name);
+            }
+        }
+        Path temp = manifest.resolveSibling(MANIFEST + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            w.write("options\t" + optionsFingerprint + "\n");
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                if (failedClasses.contains(e.getKey()) || failedPackages.contains(entry.packageName)) {
+                    continue;
+                }
+                w.write(e.getKey() + "\t" + entry.packageName + "\t" + entry.fingerprint);
+                for (String neighbour : entry.neighbours) {
+                    w.write("\t" + neighbour);
+                }
+                w.write("\n");
+            }
+        }
+        Files.move(temp, manifest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the manifest of the previous run.
+     *
+     * @return the entries of the manifest, or null if there is no usable manifest
+     */
+    private Map<String, Entry> readManifest() {
+        if (!Files.isRegularFile(manifest)) {
+            return null;
+        }
+        Map<String, Entry> entries = new TreeMap<>();
+        try (BufferedReader r = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line = r.readLine();
+            if (line == null || !line.equals("options\t" + optionsFingerprint)) {
+                return null;
+            }
+            while ((line = r.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    System.err.println("Ignoring malformed manifest " + manifest);
+                    return null;
+                }
+                Set<String> neighbours = new TreeSet<>(Arrays.asList(fields).subList(3, fields.length));
+                entries.put(fields[0], new Entry(fields[1], fields[2], neighbours));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read manifest " + manifest + ": " + e);
+            return null;
+        }
+        return entries;
+    }
+
+    /** Return a fingerprint of the options that affect the diagrams */
+    private static String optionsFingerprint(Options opt) {
+        StringBuilder sb = new StringBuilder(Version.VERSION).append('\n');
+        for (String line : opt.toString().split("\n")) {
+            int colon = line.indexOf(':');
+            if (colon < 0 || !RUN_OPTIONS.contains(line.substring(0, colon))) {
+                sb.append(line).append('\n');
+            }
+        }
+        return hash(sb);
+    }
+
+    /**
+     * Return a fingerprint of the class, covering its signature, its members,
+     * the doc tags of the class, its members, and its package, and the
+     * relations it declares.
+     */
+    private static String fingerprint(DocletEnvironment root, ElementTagCache tags, ClassNode node) {
+        TypeElement cd = node.getElement();
+        StringBuilder sb = new StringBuilder();
+        describe(tags, sb, ElementUtil.getPackageOf(root, cd));
+        describe(tags, sb, cd);
+        sb.append(cd.getSuperclass()).append(' ').append(cd.getInterfaces()).append('\n');
+        for (List<? extends Element> members : List.of(node.getFields(), node.getEnumConstants(),
+                node.getConstructors(), node.getMethods())) {
+            for (Element member : members) {
+                describe(tags, sb, member);
+            }
+        }
+        for (Edge edge : node.getRelations()) {
+            sb.append(edge.type).append(' ').append(edge.toName).append(' ').append(edge.tailLabel).append(' ')
+                    .append(edge.label).append(' ').append(edge.headLabel).append('\n');
+        }
+        return hash(sb);
+    }
+
+    /** Append the kind, modifiers, signature, and tags of an element */
+    private static void describe(ElementTagCache tags, StringBuilder sb, Element e) {
+        sb.append(e.getKind()).append(' ').append(e.getModifiers()).append(' ').append(e).append(' ')
+                .append(e.asType()).append('\n');
+        Map<String, List<String>> tagsByName = tags.getTags(e);
+        for (Map.Entry<String, List<String>> tag : new TreeMap<>(tagsByName == null ? Collections.emptyMap() : tagsByName).entrySet()) {
+            sb.append('@').append(tag.getKey()).append(' ').append(tag.getValue()).append('\n');
+        }
+    }
+
+    private static String hash(CharSequence text) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available?!?", e); // Should not happen
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(text.toString().getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "Incremental build: " + (previous == null ? "full rebuild, " : changed.size() + " classes changed, ")
+                + "rebuilt " + contextDiagrams + " context and " + packageDiagrams + " package diagrams";
+    }
+}
@@ -0,0 +1,73 @@
+package org.umlgraph.doclet;
+
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Recognizes the line of a javadoc page after which the diagram is inserted:
+ * the line holding the title heading of the page.
+ * <p>
+ * Class pages have their title in an h2 element up to JDK 11, such as
+ * <code>&lt;h2 title="Class Invoice" class="title"&gt;</code>, and in an h1
+ * element from JDK 17 on, where the kind may take two words, as in
+ * <code>&lt;h1 title="Enum Class Color" class="title"&gt;</code>. Package pages
+ * have an h1 element titled "Package", followed by the package name from JDK
+ * 11 on. A single precompiled pattern finds the headings of all pages, and the
+ * title is then compared with the expected one.
+ */
+class InsertionPointLocator implements Predicate<String> {
+    /** Matches the opening tag of a title heading, capturing the title */
+    private static final Pattern TITLE_HEADING = Pattern.compile("<[Hh][12] title=\"([^\"]*)\"");
+
+    /** The kinds of types that javadoc titles pages with */
+    private static final List<String> TYPE_KINDS = List.of("Class", "Interface", "Enum", "Enum Class",
+            "Annotation Type", "Annotation Interface", "Record", "Record Class");
+
+    /** Locates the heading of a package summary */
+    public static final InsertionPointLocator PACKAGE = new InsertionPointLocator(null);
+
+    /** The simple name of the class; null for package pages */
+    private final String className;
+
+    private InsertionPointLocator(String className) {
+        this.className = className;
+    }
+
+    /** Return a locator of the heading of the page of the specified class */
+    public static InsertionPointLocator forClass(CharSequence className) {
+        return new InsertionPointLocator(className.toString());
+    }
+
+    /** Return true if the line holds the page's title heading */
+    @Override
+    public boolean test(String line) {
+        if (line.indexOf(" title=\"") < 0) {
+            // older javadoc versions close the package heading on a line of its own
+            return className == null && line.equalsIgnoreCase("</h2>");
+        }
+        Matcher m = TITLE_HEADING.matcher(line);
+        while (m.find()) {
+            if (className == null ? isPackageTitle(m.group(1)) : isClassTitle(m.group(1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isPackageTitle(String title) {
+        return title.equals("Package") || title.startsWith("Package ");
+    }
+
+    private boolean isClassTitle(String title) {
+        int kindEnd = title.length() - className.length() - 1;
+        return kindEnd > 0 && title.charAt(kindEnd) == ' ' && title.endsWith(className)
+                && TYPE_KINDS.contains(title.substring(0, kindEnd));
+    }
+
+    @Override
+    public String toString() {
+        return className == null ? "package title heading" : "title heading of " + className;
+    }
+}
@@ -6,9 +6,6 @@ import jdk.javadoc.doclet.DocletEnvironment;
 
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.TypeElement;
-import javax.lang.model.type.TypeMirror;
-
-import org.umlgraph.doclet.util.ElementUtil;
 
 /**
  * Matches every class that implements (directly or indirectly) an interfaces
@@ -18,30 +15,19 @@ public class InterfaceMatcher implements ClassMatcher {
 
     protected DocletEnvironment root;
     protected Pattern pattern;
+    private final HierarchyIndex.Match match;
 
-    public InterfaceMatcher(DocletEnvironment root, Pattern pattern) {
-        this.root = root;
+    InterfaceMatcher(RunContext run, Pattern pattern) {
+        this.root = run.getRoot();
         this.pattern = pattern;
+        // one of the supertypes, direct or inherited, is the interface we're
+        // looking for
+        this.match = new HierarchyIndex.Match(run.getHierarchy(), true,
+                c -> c.getKind() == ElementKind.INTERFACE && this.pattern.matcher(c.toString()).matches());
     }
 
     public boolean matches(TypeElement cd) {
-        // if it's the interface we're looking for, match
-        if (cd.getKind() == ElementKind.INTERFACE && pattern.matcher(cd.toString()).matches()) {
-            return true;
-        }
-
-        // for each interface, recurse, since classes and interfaces
-        // are treated the same in the doclet API
-        for (TypeMirror type : cd.getInterfaces()) {
-            TypeElement iType = ElementUtil.getTypeElement(type);
-            if (iType != null && matches(iType)) {
-                return true;
-            }
-        }
-
-        // recurse on superclass, if available
-        TypeElement scd = ElementUtil.getTypeElement(cd.getSuperclass());
-        return scd == null ? false : matches(scd);
+        return match.matches(cd);
     }
 
     public boolean matches(CharSequence name) {
@@ -0,0 +1,249 @@
+package org.umlgraph.doclet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The package lists of the <code>-link</code> and <code>-linkoffline</code>
+ * options, fetched once per run and optionally kept in a directory shared
+ * between runs.
+ * <p>
+ * A list kept in the directory is named after the SHA-256 hash of its URL. It
+ * holds the packages of the list along with the validators sent by the
+ * server, and is revalidated on each run: through the <code>ETag</code> and
+ * <code>Last-Modified</code> headers of HTTP, and through the modification
+ * time for other URLs, such as files. The kept list is used when the list has
+ * not changed, or when it cannot be fetched. In offline mode nothing is
+ * fetched, and only the kept lists are used.
+ * <p>
+ * The kept lists are stored in a compact binary form, which is read through a
+ * memory mapping: a header, made of the magic number, the format version, the
+ * last modification time and the entity tag, followed by the number of
+ * packages and their names. Strings are stored as their UTF-8 length on two
+ * bytes followed by their bytes.
+ */
+class LinkCache {
+
+    private static final String SUFFIX = ".pkgs";
+    private static final int MAGIC = 0x554d4c50; // UMLP
+    private static final int VERSION = 1;
+
+    /** A package list along with its validators */
+    private static class Entry {
+        final long lastModified;
+        final String etag;
+        final List<String> packages;
+
+        Entry(long lastModified, String etag, List<String> packages) {
+            this.lastModified = lastModified;
+            this.etag = etag;
+            this.packages = packages;
+        }
+    }
+
+    /** The directory keeping the lists, or null */
+    private final Path directory;
+    private final boolean offline;
+    /** The lists of this run, by URL */
+    private final Map<String, List<String>> lists = new ConcurrentHashMap<>();
+
+    /**
+     * Create a cache of package lists
+     *
+     * @param directory the directory keeping the lists between runs, created if
+     *                  missing, or null to keep them for this run only
+     * @param offline   true to use only the lists kept in the directory
+     */
+    LinkCache(File directory, boolean offline) {
+        Path path = directory == null ? null : directory.toPath();
+        if (path != null) {
+            try {
+                Files.createDirectories(path);
+            } catch (IOException e) {
+                System.err.println("Cannot create the link cache " + directory + ": " + e);
+                path = null;
+            }
+        }
+        this.directory = path;
+        this.offline = offline;
+    }
+
+    /**
+     * Return the packages of the <code>package-list</code> file at the
+     * specified location, or of its <code>element-list</code> file if there is
+     * none, or null if neither can be read
+     *
+     * @param packageListUrl the location of the list, ending with a slash
+     */
+    List<String> getPackages(String packageListUrl) {
+        List<String> packages = lists.get(packageListUrl);
+        if (packages == null) {
+            for (String suffix : List.of("package-list", "element-list")) {
+                packages = load(packageListUrl + suffix);
+                if (packages != null) {
+                    break;
+                }
+            }
+            if (packages == null) {
+                return null;
+            }
+            lists.putIfAbsent(packageListUrl, packages);
+        }
+        return packages;
+    }
+
+    /** Return the packages of the list at the specified URL, or null */
+    private List<String> load(String url) {
+        Path entryFile = directory == null ? null : directory.resolve(key(url) + SUFFIX);
+        Entry entry = entryFile == null ? null : read(entryFile);
+        if (offline) {
+            if (entry == null) {
+                System.err.println("The " + url + " file is not in the link cache");
+                return null;
+            }
+            return entry.packages;
+        }
+        try {
+            URLConnection connection = new URL(url).openConnection();
+            if (entry != null) {
+                if (entry.etag != null) {
+                    connection.setRequestProperty("If-None-Match", entry.etag);
+                }
+                if (entry.lastModified != 0) {
+                    connection.setIfModifiedSince(entry.lastModified);
+                }
+            }
+            if (connection instanceof HttpURLConnection) {
+                if (((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED
+                        && entry != null) {
+                    return entry.packages;
+                }
+            } else if (entry != null && entry.lastModified != 0 && connection.getLastModified() == entry.lastModified) {
+                return entry.packages;
+            }
+            List<String> packages = new ArrayList<>();
+            try (BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (!line.startsWith("module:") && !line.isEmpty()) {
+                        packages.add(line);
+                    }
+                }
+            }
+            packages = Collections.unmodifiableList(packages);
+            if (entryFile != null) {
+                write(entryFile, new Entry(connection.getLastModified(), connection.getHeaderField("ETag"), packages));
+            }
+            return packages;
+        } catch (IOException e) {
+            if (entry != null) {
+                System.err.println("Cannot access the " + url + " file, using the one in the link cache: " + e);
+                return entry.packages;
+            }
+            System.err.println("Errors happened while accessing the " + url + " file");
+            return null;
+        }
+    }
+
+    /** Return the name of the entry of the specified URL */
+    private static String key(String url) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available?!?", e); // Should not happen
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest(url.getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /** Read an entry, returning null if it is missing or damaged */
+    private static Entry read(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long lastModified = buffer.getLong();
+            String etag = getString(buffer);
+            int count = buffer.getInt();
+            List<String> packages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                packages.add(getString(buffer));
+            }
+            return new Entry(lastModified, etag.isEmpty() ? null : etag, Collections.unmodifiableList(packages));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            System.err.println("Ignoring the damaged link cache entry " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static String getString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Write an entry, replacing the previous one at once */
+    private void write(Path file, Entry entry) {
+        try {
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(temp);
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeLong(entry.lastModified);
+                    putString(out, entry.etag == null ? "" : entry.etag);
+                    out.writeInt(entry.packages.size());
+                    for (String name : entry.packages) {
+                        putString(out, name);
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot add " + file + " to the link cache: " + e);
+        }
+    }
+
+    private static void putString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff) {
+            throw new IOException("String too long: " + s.length() + " characters");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
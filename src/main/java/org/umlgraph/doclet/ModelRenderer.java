@@ -0,0 +1,96 @@
+/*
+ * Create a graphviz graph based on the classes in the specified java
+ * source files.
+ *
+ * (C) Copyright 2002-2010 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.VariableElement;
+
+import org.umlgraph.doclet.UmlModel.ClassNode;
+
+/**
+ * Output side of a class graph. {@link ClassGraph} selects the nodes and edges
+ * of a diagram from the {@link UmlModel} and passes them, in order, to a
+ * renderer that turns them into a concrete format.
+ * <p>
+ * Nodes are identified by their alias, a name unique within the graph.
+ *
+ * @depend - - - UmlModel
+ */
+public interface ModelRenderer {
+
+    /** A renderer that discards everything, for graphs computed only for their relations */
+    ModelRenderer NONE = new ModelRenderer() {
+        public void prologue(Options opt) {
+        }
+
+        public void printClass(Options opt, ClassNode node, String alias, String url, List<VariableElement> fields,
+                List<ExecutableElement> constructors, List<ExecutableElement> methods) {
+        }
+
+        public void printExternalClass(Options opt, Name className, String alias, String url) {
+        }
+
+        public void printRelation(Options opt, RelationType rt, Name fromName, String fromAlias, Name toName,
+                String toAlias, String tailLabel, String label, String headLabel) {
+        }
+
+        public void epilogue() {
+        }
+    };
+
+    /**
+     * Start the graph
+     *
+     * @param opt the global options of the graph
+     */
+    void prologue(Options opt) throws IOException;
+
+    /**
+     * Output a class node along with its notes
+     *
+     * @param opt          the options of the class
+     * @param node         the class
+     * @param alias        the node's alias
+     * @param url          the class's documentation URL; null if not known
+     * @param fields       the visible fields, when attributes are shown
+     * @param constructors the visible constructors, when constructors are shown
+     * @param methods      the visible methods, when operations are shown
+     */
+    void printClass(Options opt, ClassNode node, String alias, String url, List<VariableElement> fields,
+            List<ExecutableElement> constructors, List<ExecutableElement> methods);
+
+    /**
+     * Output a node for a class that javadoc knows nothing about
+     */
+    void printExternalClass(Options opt, Name className, String alias, String url);
+
+    /**
+     * Output a relation between two nodes. Labels may be null or empty.
+     */
+    void printRelation(Options opt, RelationType rt, Name fromName, String fromAlias, Name toName, String toAlias,
+            String tailLabel, String label, String headLabel);
+
+    /** End the graph */
+    void epilogue();
+}
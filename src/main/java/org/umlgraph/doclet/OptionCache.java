@@ -0,0 +1,90 @@
+package org.umlgraph.doclet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+
+import com.sun.source.util.DocTrees;
+
+/**
+ * An option provider that remembers the options another provider resolves
+ * for each class and class name, so that the <code>@opt</code> tags and the
+ * view overrides of a class are applied once per graph rather than on every
+ * lookup.
+ * <p>
+ * The options of a {@link ContextView} depend on its context center; the
+ * remembered options are discarded when the center moves. Other providers do
+ * not change once built. The cache is not thread safe, and is meant to be
+ * used by a single graph.
+ */
+class OptionCache implements OptionProvider {
+    private final OptionProvider provider;
+    private final Map<TypeElement, Options> classOptions = new HashMap<>();
+    private final Map<CharSequence, Options> nameOptions = new HashMap<>();
+    /** The context center the options were resolved for, if any */
+    private TypeElement center;
+
+    private OptionCache(OptionProvider provider) {
+        this.provider = provider;
+        this.center = contextCenter();
+    }
+
+    /** Return a cache of the options of the specified provider */
+    static OptionCache of(OptionProvider provider) {
+        return provider instanceof OptionCache ? (OptionCache) provider : new OptionCache(provider);
+    }
+
+    private TypeElement contextCenter() {
+        return provider instanceof ContextView ? ((ContextView) provider).getContextCenter() : null;
+    }
+
+    /** Discard the remembered options if the context center has moved */
+    private void validate() {
+        TypeElement current = contextCenter();
+        if (current != center) {
+            classOptions.clear();
+            nameOptions.clear();
+            center = current;
+        }
+    }
+
+    public Options getOptionsFor(DocTrees dt, TypeElement cd) {
+        validate();
+        Options opt = classOptions.get(cd);
+        if (opt == null) {
+            opt = provider.getOptionsFor(dt, cd);
+            classOptions.put(cd, opt);
+        }
+        return opt;
+    }
+
+    public Options getOptionsFor(CharSequence name) {
+        validate();
+        // names and strings are immutable; other sequences are copied
+        CharSequence key = name instanceof String || name instanceof Name ? name : name.toString();
+        Options opt = nameOptions.get(key);
+        if (opt == null) {
+            opt = provider.getOptionsFor(name);
+            nameOptions.put(key, opt);
+        }
+        return opt;
+    }
+
+    public Options getGlobalOptions() {
+        return provider.getGlobalOptions();
+    }
+
+    public void overrideForClass(Options opt, TypeElement cd) {
+        provider.overrideForClass(opt, cd);
+    }
+
+    public void overrideForClass(Options opt, CharSequence className) {
+        provider.overrideForClass(opt, className);
+    }
+
+    public String getDisplayName() {
+        return provider.getDisplayName();
+    }
+}
@@ -26,12 +26,14 @@ import com.sun.source.util.DocTrees;
  */
 public interface OptionProvider {
     /**
-     * Returns the options for the specified class.
+     * Returns the options for the specified class. The options may be shared
+     * with other classes, and must not be modified.
      */
     public Options getOptionsFor(DocTrees dt, TypeElement cd);
 
     /**
-     * Returns the options for the specified class.
+     * Returns the options for the specified class. The options may be shared
+     * with other classes, and must not be modified.
      */
     public Options getOptionsFor(CharSequence name);
 
@@ -0,0 +1,59 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.lang.model.element.Element;
+
+import org.umlgraph.doclet.util.ElementTagCache;
+
+/**
+ * Run scoped cache of the <code>@opt</code> tags of the elements, compiled
+ * into option mutations.
+ * <p>
+ * The tags of an element are tokenized and resolved to their option setters
+ * once, the first time the element's options are applied, which happens for
+ * every graph and view the element appears in. Options that are not
+ * recognized are left out, as {@link Options#setOption(String[])} ignores
+ * them. The cache is kept by the context of the run whose tags it reads.
+ */
+class OptionTagCache {
+
+    private final ElementTagCache tags;
+    private final Map<Element, List<Options.Mutation>> options = new ConcurrentHashMap<>();
+
+    OptionTagCache(ElementTagCache tags) {
+        this.tags = tags;
+    }
+
+    /** Return the compiled <code>@opt</code> tags of the element, in order */
+    List<Options.Mutation> getOptions(Element e) {
+        List<Options.Mutation> result = options.get(e);
+        if (result == null) {
+            result = compile(e);
+            List<Options.Mutation> previous = options.putIfAbsent(e, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+        return result;
+    }
+
+    private List<Options.Mutation> compile(Element e) {
+        List<String> texts = tags.getTag(e, "opt");
+        if (texts.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Options.Mutation> result = new ArrayList<>(texts.size());
+        for (String tag : texts) {
+            Options.Mutation mutation = Options.compile(StringUtil.tokenize(tag));
+            if (mutation != null) {
+                result.add(mutation);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -19,24 +19,23 @@
 
 package org.umlgraph.doclet;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -44,7 +43,6 @@ import javax.lang.model.element.Element;
 import javax.lang.model.element.Name;
 import javax.lang.model.element.TypeElement;
 
-import org.umlgraph.doclet.util.TagUtil;
 
 import com.sun.source.util.DocTrees;
 
@@ -319,11 +317,10 @@ public class Options implements Cloneable, OptionProvider {
             @Override
             public boolean process(String option, List<String> arguments) {
                 if (arguments == null || arguments.isEmpty()) {
-                    hidePatterns.clear();
-                    hidePatterns.add(allPattern);
+                    hidePatterns = List.of(allPattern);
                 } else {
                     try {
-                        hidePatterns.add(Pattern.compile(arguments.get(0)));
+                        hidePatterns = append(hidePatterns, Pattern.compile(arguments.get(0)));
                     } catch (PatternSyntaxException e) {
                         System.err.println("Skipping invalid pattern " + arguments.get(0));
                     }
@@ -337,7 +334,7 @@ public class Options implements Cloneable, OptionProvider {
             @Override
             public boolean process(String option, List<String> arguments) {
                 try {
-                    includePatterns.add(Pattern.compile(arguments.get(0)));
+                    includePatterns = append(includePatterns, Pattern.compile(arguments.get(0)));
                 } catch (PatternSyntaxException e) {
                     System.err.println("Skipping invalid pattern " + arguments.get(0));
                 }
@@ -369,7 +366,7 @@ public class Options implements Cloneable, OptionProvider {
                 + "external classes will just be mapped to the on-line Java API documentation.", "<string>") {
             @Override
             public boolean process(String option, List<String> arguments) {
-                setApiDocMapFile(arguments.get(0));
+                apiDocOptions = append(apiDocOptions, new String[] { "-apidocmap", arguments.get(0) });
                 return true;
             }
         },
@@ -482,7 +479,7 @@ public class Options implements Cloneable, OptionProvider {
             @Override
             public boolean process(String option, List<String> arguments) {
                 try {
-                    collPackages.add(Pattern.compile(arguments.get(0)));
+                    collPackages = append(collPackages, Pattern.compile(arguments.get(0)));
                 } catch (PatternSyntaxException e) {
                     System.err.println("Skipping invalid pattern " + arguments.get(0));
                 }
@@ -515,7 +512,7 @@ public class Options implements Cloneable, OptionProvider {
             @Override
             public boolean process(String option, List<String> arguments) {
                 System.err.println("add -link option with args : " + arguments.get(0));
-                addApiDocRoots(arguments.get(0));
+                apiDocOptions = append(apiDocOptions, new String[] { "-link", arguments.get(0) });
                 return true;
             }
         },
@@ -531,7 +528,7 @@ public class Options implements Cloneable, OptionProvider {
                 + "See the <em>javadoc</em> documentation for more details.", "<string> <string>") {
             @Override
             public boolean process(String option, List<String> arguments) {
-                addApiDocRootsOffline(arguments.get(0), arguments.get(1));
+                apiDocOptions = append(apiDocOptions, new String[] { "-linkoffline", arguments.get(0), arguments.get(1) });
                 return true;
             }
         },
@@ -546,6 +543,7 @@ public class Options implements Cloneable, OptionProvider {
                         contextRelationPattern = new RelationPattern(d);
                     } else {
                         rt = RelationType.valueOf(arguments.get(0).toUpperCase());
+                        contextRelationPattern = new RelationPattern(contextRelationPattern);
                         contextRelationPattern.addRelation(rt, d);
                     }
                 } catch (IllegalArgumentException e) {
@@ -582,6 +580,96 @@ public class Options implements Cloneable, OptionProvider {
                 dotExecutable = arguments.get(0);
                 return true;
             }
+        },
+        new Option("-threads", true, "Specify the number of threads used to generate the diagrams of UmlGraphDoc, or the views (1 by default).", "<int>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                try {
+                    threads = Integer.parseInt(arguments.get(0));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping invalid threads " + arguments.get(0));
+                }
+                return true;
+            }
+        },
+        new Option("-dotprocesses", true, "Specify the maximum number of <em>dot</em> processes run at once by UmlGraphDoc (the number of processors by default).", "<int>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                try {
+                    dotProcesses = Integer.parseInt(arguments.get(0));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping invalid dotprocesses " + arguments.get(0));
+                }
+                return true;
+            }
+        },
+        new Option("-dotbatch", true, "Specify the maximum number of diagrams laid out by a single <em>dot</em> process (16 by default).", "<int>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                try {
+                    dotBatchSize = Integer.parseInt(arguments.get(0));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping invalid dotbatch " + arguments.get(0));
+                }
+                return true;
+            }
+        },
+        new Option("-dottimeout", true, "Specify the number of seconds <em>dot</em> may spend on a diagram; 0 for no limit (300 by default).", "<int>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                try {
+                    dotTimeout = Integer.parseInt(arguments.get(0));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping invalid dottimeout " + arguments.get(0));
+                }
+                return true;
+            }
+        },
+        new Option("-dotcache", true, "Specify a directory where UmlGraphDoc keeps the diagrams laid out by <em>dot</em>, to reuse them in later runs.", "<string>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                dotCache = arguments.get(0);
+                return true;
+            }
+        },
+        new Option("-dotcachesize", true, "Specify the size in megabytes the diagram cache is trimmed to (64 by default).", "<int>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                try {
+                    dotCacheSize = Integer.parseInt(arguments.get(0));
+                } catch (NumberFormatException e) {
+                    System.err.println("Skipping invalid dotcachesize " + arguments.get(0));
+                }
+                return true;
+            }
+        },
+        new Option("-linkcache", true, "Specify a directory where the package lists of the links are kept, to reuse them in later runs.", "<string>") {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                linkCache = arguments.get(0);
+                return true;
+            }
+        },
+        new Option("-offline", false, "Do not fetch the package lists of the links; use the ones kept by -linkcache.", null) {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                offline = true;
+                return true;
+            }
+        },
+        new Option("-incremental", false, "Rebuild only the UmlGraphDoc diagrams affected by the classes changed since the previous run.", null) {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                incremental = true;
+                return true;
+            }
+        },
+        new Option("-stats", false, "Report the statistics of the doc comment tag cache and of the hidden state memos at the end of the run.", null) {
+            @Override
+            public boolean process(String option, List<String> arguments) {
+                stats = true;
+                return true;
+            }
         }
 
         
@@ -592,8 +680,10 @@ public class Options implements Cloneable, OptionProvider {
     protected static final String DEFAULT_EXTERNAL_APIDOC = "https://docs.oracle.com/javase/9/docs/api/";
 
     // instance fields
-    List<Pattern> hidePatterns = new ArrayList<>();
-    List<Pattern> includePatterns = new ArrayList<>();
+    // the pattern lists, the api doc map and the relation pattern are shared
+    // between clones, and are therefore replaced rather than modified
+    List<Pattern> hidePatterns = List.of();
+    List<Pattern> includePatterns = List.of();
     boolean showQualified = false;
     boolean showQualifiedGenerics = false;
     boolean hideGenerics = false;
@@ -626,7 +716,7 @@ public class Options implements Cloneable, OptionProvider {
     String bgColor = null;
     public String outputFileName = "graph.dot";
     String outputEncoding = StandardCharsets.UTF_8.name();
-    Map<Pattern, String> apiDocMap = new HashMap<>();
+    ApiDocMap apiDocMap = new ApiDocMap();
     String apiDocRoot = null;
     boolean postfixPackage = false;
     boolean useGuillemot = true;
@@ -651,7 +741,7 @@ public class Options implements Cloneable, OptionProvider {
     Visibility inferDependencyVisibility = Visibility.PRIVATE;
     boolean inferDepInPackage = false;
     RelationType inferRelationshipType = RelationType.NAVASSOC;
-    private List<Pattern> collPackages = new ArrayList<>();
+    private List<Pattern> collPackages = List.of();
     boolean compact = false;
     boolean hidePrivateInner = false;
     // internal option, used by UMLDoc to generate relative links between classes
@@ -662,26 +752,74 @@ public class Options implements Cloneable, OptionProvider {
     // would have been hidden by the hide pattern "java.*"
     boolean strictMatching = true;
     String dotExecutable = "dot";
+    int threads = 1;
+    int dotProcesses = Runtime.getRuntime().availableProcessors();
+    int dotBatchSize = 16;
+    int dotTimeout = 300;
+    String dotCache = null;
+    int dotCacheSize = 64;
+    boolean incremental = false;
+    boolean stats = false;
+    String linkCache = null;
+    boolean offline = false;
+    /** The api doc options of the command line, applied once all of the options are known */
+    private transient List<String[]> apiDocOptions = List.of();
+    /** The package lists fetched in this run, shared with the copies */
+    private transient LinkCache links;
+    /** The javadoc run the options are used in, shared with the copies */
+    transient RunContext run;
+    /** Set on options shared between the classes of a diagram */
+    private boolean frozen = false;
+    /** The pattern lists compiled for matching, shared with the copies that share the lists */
+    private transient PatternSet hideSet, includeSet, collPackageSet;
 
     Options() {
     }
 
+    /**
+     * Return a modifiable copy of the options. The copy shares the pattern
+     * lists and the api doc map with the original, and only replaces them when
+     * it is changed, so copying allocates a single object.
+     */
     @Override
     public Options clone() {
+        // compile the patterns first, so that the copy shares the results
+        hideSet();
+        includeSet();
+        collPackageSet();
         Options clone = null;
         try {
             clone = (Options) super.clone();
         } catch (CloneNotSupportedException e) {
             throw new RuntimeException("Cannot clone?!?", e); // Should not happen
         }
-        // deep clone the hide and collection patterns
-        clone.hidePatterns = new ArrayList<>(hidePatterns);
-        clone.includePatterns = new ArrayList<>(includePatterns);
-        clone.collPackages = new ArrayList<>(collPackages);
-        clone.apiDocMap = new HashMap<>(apiDocMap);
+        clone.frozen = false;
         return clone;
     }
 
+    /**
+     * Make the options unmodifiable, so that they can be shared as the options
+     * of all the classes they apply to. Changing them afterwards through
+     * {@link #setOption(String[])} fails.
+     */
+    Options freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /** Return these options, or a modifiable copy of them if they are frozen */
+    Options modifiable() {
+        return frozen ? clone() : this;
+    }
+
+    /** Return an unmodifiable list consisting of the list's elements and the specified one */
+    private static <T> List<T> append(List<T> list, T element) {
+        List<T> appended = new ArrayList<>(list.size() + 1);
+        appended.addAll(list);
+        appended.add(element);
+        return Collections.unmodifiableList(appended);
+    }
+
     /** Most complete output */
     public void setAll() {
         showAttributes = true;
@@ -727,244 +865,323 @@ public class Options implements Cloneable, OptionProvider {
         return expect.length() == end - begin && expect.regionMatches(0, given, begin, end - begin);
     }
 
+    /** Applies an option, along with its arguments, to a set of options */
+    private interface Setter {
+        /**
+         * @param o        the options to change
+         * @param opt      the option and its arguments
+         * @param positive false if the option is negated
+         */
+        void set(Options o, String[] opt, boolean positive);
+    }
+
+    /** An option as written, resolved to its setter */
+    private static class OptionName {
+        final Setter setter;
+        /** The value returned by {@link Options#optionLength(String)} */
+        final int length;
+        final boolean positive;
+
+        OptionName(Setter setter, int length, boolean positive) {
+            this.setter = setter;
+            this.length = length;
+            this.positive = positive;
+        }
+    }
+
     /**
-     * Return the number of arguments associated with the specified option. The
-     * return value includes the actual option. Will return 0 if the option is not
-     * supported.
+     * The options that {@link #setOption(String[])} applies, under every way
+     * of writing them: with a leading <code>-</code> or <code>--</code> or
+     * without, and negated with <code>!</code> when they can be. Looking an
+     * option up is a single hash lookup of the string as given.
      */
-    public static int optionLength(String option) {
-        if (matchOption(option, "qualify", true) || matchOption(option, "qualifyGenerics", true)
-                || matchOption(option, "hideGenerics", true) || matchOption(option, "horizontal", true)
-                || matchOption(option, "all") || matchOption(option, "attributes", true)
-                || matchOption(option, "enumconstants", true) || matchOption(option, "operations", true)
-                || matchOption(option, "enumerations", true) || matchOption(option, "constructors", true)
-                || matchOption(option, "visibility", true) || matchOption(option, "types", true)
-                || matchOption(option, "autosize", true) || matchOption(option, "commentname", true)
-                || matchOption(option, "nodefontabstractitalic", true) || matchOption(option, "postfixpackage", true)
-                || matchOption(option, "noguillemot", true) || matchOption(option, "views", true)
-                || matchOption(option, "inferrel", true) || matchOption(option, "useimports", true)
-                || matchOption(option, "collapsible", true) || matchOption(option, "inferdep", true)
-                || matchOption(option, "inferdepinpackage", true) || matchOption(option, "hideprivateinner", true)
-                || matchOption(option, "compact", true)) {
+    private static final Map<String, OptionName> OPTION_NAMES = new HashMap<>();
 
-            return 1;
-        } else if (matchOption(option, "nodefillcolor") || matchOption(option, "nodefontcolor")
-                || matchOption(option, "nodefontsize") || matchOption(option, "nodefontname")
-                || matchOption(option, "nodefontclasssize") || matchOption(option, "nodefontclassname")
-                || matchOption(option, "nodefonttagsize") || matchOption(option, "nodefonttagname")
-                || matchOption(option, "nodefontpackagesize") || matchOption(option, "nodefontpackagename")
-                || matchOption(option, "edgefontcolor") || matchOption(option, "edgecolor")
-                || matchOption(option, "edgefontsize") || matchOption(option, "edgefontname")
-                || matchOption(option, "shape") || matchOption(option, "output")
-                || matchOption(option, "outputencoding") || matchOption(option, "bgcolor")
-                || matchOption(option, "hide") || matchOption(option, "include") || matchOption(option, "apidocroot")
-                || matchOption(option, "apidocmap") || matchOption(option, "d") || matchOption(option, "view")
-                || matchOption(option, "inferreltype") || matchOption(option, "inferdepvis")
-                || matchOption(option, "collpackages") || matchOption(option, "nodesep")
-                || matchOption(option, "ranksep") || matchOption(option, "dotexecutable")
-                || matchOption(option, "link")) {
-            return 2;
-        } else if (matchOption(option, "contextPattern") || matchOption(option, "linkoffline")) {
-            return 3;
-        } else {
-            return 0;
+    /**
+     * Register an option
+     *
+     * @param name      the name of the option
+     * @param length    the number of arguments, including the option
+     * @param negatable true if the option can be negated
+     * @param setter    the setter of the option
+     */
+    private static void register(String name, int length, boolean negatable, Setter setter) {
+        for (String dashes : List.of("", "-", "--")) {
+            for (String negation : negatable ? List.of("", "!") : List.of("")) {
+                // negated options are not counted as taking arguments
+                OPTION_NAMES.put(dashes + negation + name,
+                        new OptionName(setter, negation.isEmpty() || length == 1 ? length : 0, negation.isEmpty()));
+            }
         }
     }
 
-    /** Set the options based on a single option and its arguments */
-    void setOption(String[] opt) {
-        if (!matchOption(opt[0], "hide") && optionLength(opt[0]) > opt.length) {
-            System.err.println("Skipping option '" + opt[0] + "', missing argument");
-            return;
-        }
-        boolean dash = opt[0].length() > 1 && opt[0].charAt(0) == '-';
-        boolean positive = !(opt[0].length() > 1 && opt[0].charAt(dash ? 1 : 0) == '!');
+    /** Register an option taking no arguments */
+    private static void flag(String name, Setter setter) {
+        register(name, 1, true, setter);
+    }
 
-        if (matchOption(opt[0], "qualify", true)) {
-            showQualified = positive;
-        } else if (matchOption(opt[0], "qualifyGenerics", true)) {
-            showQualifiedGenerics = positive;
-        } else if (matchOption(opt[0], "hideGenerics", true)) {
-            hideGenerics = positive;
-        } else if (matchOption(opt[0], "horizontal", true)) {
-            horizontal = positive;
-        } else if (matchOption(opt[0], "attributes", true)) {
-            showAttributes = positive;
-        } else if (matchOption(opt[0], "enumconstants", true)) {
-            showEnumConstants = positive;
-        } else if (matchOption(opt[0], "operations", true)) {
-            showOperations = positive;
-        } else if (matchOption(opt[0], "enumerations", true)) {
-            showEnumerations = positive;
-        } else if (matchOption(opt[0], "constructors", true)) {
-            showConstructors = positive;
-        } else if (matchOption(opt[0], "visibility", true)) {
-            showVisibility = positive;
-        } else if (matchOption(opt[0], "types", true)) {
-            showType = positive;
-        } else if (matchOption(opt[0], "autoSize", true)) {
-            autoSize = positive;
-        } else if (matchOption(opt[0], "commentname", true)) {
-            showComment = positive;
-        } else if (matchOption(opt[0], "all")) {
-            setAll();
-        } else if (matchOption(opt[0], "bgcolor", true)) {
-            bgColor = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "edgecolor", true)) {
-            edgeColor = positive ? opt[1] : "black";
-        } else if (matchOption(opt[0], "edgefontcolor", true)) {
-            edgeFontColor = positive ? opt[1] : "black";
-        } else if (matchOption(opt[0], "edgefontname", true)) {
-            edgeFontName = positive ? opt[1] : Font.DEFAULT_FONT;
-        } else if (matchOption(opt[0], "edgefontsize", true)) {
-            edgeFontSize = positive ? Double.parseDouble(opt[1]) : 10;
-        } else if (matchOption(opt[0], "nodefontcolor", true)) {
-            nodeFontColor = positive ? opt[1] : "black";
-        } else if (matchOption(opt[0], "nodefontname", true)) {
-            nodeFontName = positive ? opt[1] : Font.DEFAULT_FONT;
-        } else if (matchOption(opt[0], "nodefontabstractitalic", true)) {
-            nodeFontAbstractItalic = positive;
-        } else if (matchOption(opt[0], "nodefontsize", true)) {
-            nodeFontSize = positive ? Double.parseDouble(opt[1]) : 10;
-        } else if (matchOption(opt[0], "nodefontclassname", true)) {
-            nodeFontClassName = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "nodefontclasssize", true)) {
-            nodeFontClassSize = positive ? Double.parseDouble(opt[1]) : -1;
-        } else if (matchOption(opt[0], "nodefonttagname", true)) {
-            nodeFontTagName = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "nodefonttagsize", true)) {
-            nodeFontTagSize = positive ? Double.parseDouble(opt[1]) : -1;
-        } else if (matchOption(opt[0], "nodefontpackagename", true)) {
-            nodeFontPackageName = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "nodefontpackagesize", true)) {
-            nodeFontPackageSize = positive ? Double.parseDouble(opt[1]) : -1;
-        } else if (matchOption(opt[0], "nodefillcolor", true)) {
-            nodeFillColor = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "shape", true)) {
-            shape = positive ? Shape.of(opt[1]) : Shape.CLASS;
-        } else if (matchOption(opt[0], "output", true)) {
-            outputFileName = positive ? opt[1] : "graph.dot";
-        } else if (matchOption(opt[0], "outputencoding", true)) {
-            outputEncoding = positive ? opt[1] : "ISO-8859-1";
-        } else if (matchOption(opt[0], "hide", true)) {
-            if (positive) {
-                if (opt.length == 1) {
-                    hidePatterns.clear();
-                    hidePatterns.add(allPattern);
-                } else {
-                    try {
-                        hidePatterns.add(Pattern.compile(opt[1]));
-                    } catch (PatternSyntaxException e) {
-                        System.err.println("Skipping invalid pattern " + opt[1]);
-                    }
+    /** Register an option taking an argument */
+    private static void option(String name, Setter setter) {
+        register(name, 2, true, setter);
+    }
+
+    private static final Setter HIDE = (o, opt, positive) -> {
+        if (positive) {
+            if (opt.length == 1) {
+                o.hidePatterns = List.of(allPattern);
+            } else {
+                try {
+                    o.hidePatterns = append(o.hidePatterns, Pattern.compile(opt[1]));
+                } catch (PatternSyntaxException e) {
+                    System.err.println("Skipping invalid pattern " + opt[1]);
                 }
-            } else
-                hidePatterns.clear();
-        } else if (matchOption(opt[0], "include", true)) {
+            }
+        } else
+            o.hidePatterns = List.of();
+    };
+
+    static {
+        flag("qualify", (o, opt, positive) -> o.showQualified = positive);
+        flag("qualifyGenerics", (o, opt, positive) -> o.showQualifiedGenerics = positive);
+        flag("hideGenerics", (o, opt, positive) -> o.hideGenerics = positive);
+        flag("horizontal", (o, opt, positive) -> o.horizontal = positive);
+        flag("attributes", (o, opt, positive) -> o.showAttributes = positive);
+        flag("enumconstants", (o, opt, positive) -> o.showEnumConstants = positive);
+        flag("operations", (o, opt, positive) -> o.showOperations = positive);
+        flag("enumerations", (o, opt, positive) -> o.showEnumerations = positive);
+        flag("constructors", (o, opt, positive) -> o.showConstructors = positive);
+        flag("visibility", (o, opt, positive) -> o.showVisibility = positive);
+        flag("types", (o, opt, positive) -> o.showType = positive);
+        flag("autosize", (o, opt, positive) -> o.autoSize = positive);
+        flag("autoSize", (o, opt, positive) -> o.autoSize = positive);
+        flag("commentname", (o, opt, positive) -> o.showComment = positive);
+        register("all", 1, false, (o, opt, positive) -> o.setAll());
+        option("bgcolor", (o, opt, positive) -> o.bgColor = positive ? opt[1] : null);
+        option("edgecolor", (o, opt, positive) -> o.edgeColor = positive ? opt[1] : "black");
+        option("edgefontcolor", (o, opt, positive) -> o.edgeFontColor = positive ? opt[1] : "black");
+        option("edgefontname", (o, opt, positive) -> o.edgeFontName = positive ? opt[1] : Font.DEFAULT_FONT);
+        option("edgefontsize", (o, opt, positive) -> o.edgeFontSize = positive ? Double.parseDouble(opt[1]) : 10);
+        option("nodefontcolor", (o, opt, positive) -> o.nodeFontColor = positive ? opt[1] : "black");
+        option("nodefontname", (o, opt, positive) -> o.nodeFontName = positive ? opt[1] : Font.DEFAULT_FONT);
+        flag("nodefontabstractitalic", (o, opt, positive) -> o.nodeFontAbstractItalic = positive);
+        option("nodefontsize", (o, opt, positive) -> o.nodeFontSize = positive ? Double.parseDouble(opt[1]) : 10);
+        option("nodefontclassname", (o, opt, positive) -> o.nodeFontClassName = positive ? opt[1] : null);
+        option("nodefontclasssize", (o, opt, positive) -> o.nodeFontClassSize = positive ? Double.parseDouble(opt[1]) : -1);
+        option("nodefonttagname", (o, opt, positive) -> o.nodeFontTagName = positive ? opt[1] : null);
+        option("nodefonttagsize", (o, opt, positive) -> o.nodeFontTagSize = positive ? Double.parseDouble(opt[1]) : -1);
+        option("nodefontpackagename", (o, opt, positive) -> o.nodeFontPackageName = positive ? opt[1] : null);
+        option("nodefontpackagesize", (o, opt, positive) -> o.nodeFontPackageSize = positive ? Double.parseDouble(opt[1]) : -1);
+        option("nodefillcolor", (o, opt, positive) -> o.nodeFillColor = positive ? opt[1] : null);
+        option("shape", (o, opt, positive) -> o.shape = positive ? Shape.of(opt[1]) : Shape.CLASS);
+        option("output", (o, opt, positive) -> o.outputFileName = positive ? opt[1] : "graph.dot");
+        option("outputencoding", (o, opt, positive) -> o.outputEncoding = positive ? opt[1] : "ISO-8859-1");
+        option("hide", HIDE);
+        option("include", (o, opt, positive) -> {
             if (positive) {
                 try {
-                    includePatterns.add(Pattern.compile(opt[1]));
+                    o.includePatterns = append(o.includePatterns, Pattern.compile(opt[1]));
                 } catch (PatternSyntaxException e) {
                     System.err.println("Skipping invalid pattern " + opt[1]);
                 }
             } else
-                includePatterns.clear();
-        } else if (matchOption(opt[0], "apidocroot", true)) {
-            apiDocRoot = positive ? fixApiDocRoot(opt[1]) : null;
-        } else if (matchOption(opt[0], "apidocmap", true)) {
+                o.includePatterns = List.of();
+        });
+        option("apidocroot", (o, opt, positive) -> o.apiDocRoot = positive ? o.fixApiDocRoot(opt[1]) : null);
+        option("apidocmap", (o, opt, positive) -> {
             if (positive)
-                setApiDocMapFile(opt[1]);
+                o.setApiDocMapFile(opt[1]);
             else
-                apiDocMap.clear();
-        } else if (matchOption(opt[0], "noguillemot", true)) {
-            guilOpen = positive ? "&lt;&lt;" : "\u00ab";
-            guilClose = positive ? "&gt;&gt;" : "\u00bb";
-        } else if (matchOption(opt[0], "view", true)) {
-            viewName = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "views", true)) {
-            findViews = positive;
-        } else if (matchOption(opt[0], "d", true)) {
-            outputDirectory = positive ? opt[1] : null;
-        } else if (matchOption(opt[0], "inferrel", true)) {
-            inferRelationships = positive;
-        } else if (matchOption(opt[0], "inferreltype", true)) {
+                o.apiDocMap = new ApiDocMap();
+        });
+        flag("noguillemot", (o, opt, positive) -> {
+            o.guilOpen = positive ? "&lt;&lt;" : "\u00ab";
+            o.guilClose = positive ? "&gt;&gt;" : "\u00bb";
+        });
+        option("view", (o, opt, positive) -> o.viewName = positive ? opt[1] : null);
+        flag("views", (o, opt, positive) -> o.findViews = positive);
+        option("d", (o, opt, positive) -> o.outputDirectory = positive ? opt[1] : null);
+        flag("inferrel", (o, opt, positive) -> o.inferRelationships = positive);
+        option("inferreltype", (o, opt, positive) -> {
             if (positive) {
                 try {
-                    inferRelationshipType = RelationType.valueOf(opt[1].toUpperCase());
+                    o.inferRelationshipType = RelationType.valueOf(opt[1].toUpperCase());
                 } catch (IllegalArgumentException e) {
                     System.err.println("Unknown association type " + opt[1]);
                 }
             } else
-                inferRelationshipType = RelationType.NAVASSOC;
-        } else if (matchOption(opt[0], "inferdepvis", true)) {
+                o.inferRelationshipType = RelationType.NAVASSOC;
+        });
+        option("inferdepvis", (o, opt, positive) -> {
             if (positive) {
                 try {
                     Visibility vis = Visibility.valueOf(opt[1].toUpperCase());
-                    inferDependencyVisibility = vis;
+                    o.inferDependencyVisibility = vis;
                 } catch (IllegalArgumentException e) {
                     System.err.println(
                             "Ignoring invalid visibility specification for " + "dependency inference: " + opt[1]);
                 }
             } else
-                inferDependencyVisibility = Visibility.PRIVATE;
-        } else if (matchOption(opt[0], "collapsible", true)) {
-            collapsibleDiagrams = positive;
-        } else if (matchOption(opt[0], "inferdep", true)) {
-            inferDependencies = positive;
-        } else if (matchOption(opt[0], "inferdepinpackage", true)) {
-            inferDepInPackage = positive;
-        } else if (matchOption(opt[0], "hideprivateinner", true)) {
-            hidePrivateInner = positive;
-        } else if (matchOption(opt[0], "useimports", true)) {
-            useImports = positive;
-        } else if (matchOption(opt[0], "collpackages", true)) {
+                o.inferDependencyVisibility = Visibility.PRIVATE;
+        });
+        flag("collapsible", (o, opt, positive) -> o.collapsibleDiagrams = positive);
+        flag("inferdep", (o, opt, positive) -> o.inferDependencies = positive);
+        flag("inferdepinpackage", (o, opt, positive) -> o.inferDepInPackage = positive);
+        flag("hideprivateinner", (o, opt, positive) -> o.hidePrivateInner = positive);
+        flag("useimports", (o, opt, positive) -> o.useImports = positive);
+        option("collpackages", (o, opt, positive) -> {
             if (positive) {
                 try {
-                    collPackages.add(Pattern.compile(opt[1]));
+                    o.collPackages = append(o.collPackages, Pattern.compile(opt[1]));
                 } catch (PatternSyntaxException e) {
                     System.err.println("Skipping invalid pattern " + opt[1]);
                 }
             } else
-                collPackages.clear();
-        } else if (matchOption(opt[0], "compact", true)) {
-            compact = positive;
-        } else if (matchOption(opt[0], "postfixpackage", true)) {
-            postfixPackage = positive;
-        } else if (matchOption(opt[0], "link")) {
-            addApiDocRoots(opt[1]);
-        } else if (matchOption(opt[0], "linkoffline")) {
-            addApiDocRootsOffline(opt[1], opt[2]);
-        } else if (matchOption(opt[0], "contextPattern")) {
+                o.collPackages = List.of();
+        });
+        flag("compact", (o, opt, positive) -> o.compact = positive);
+        flag("incremental", (o, opt, positive) -> o.incremental = positive);
+        option("linkcache", (o, opt, positive) -> o.linkCache = positive ? opt[1] : null);
+        flag("offline", (o, opt, positive) -> o.offline = positive);
+        flag("postfixpackage", (o, opt, positive) -> o.postfixPackage = positive);
+        flag("stats", (o, opt, positive) -> o.stats = positive);
+        register("link", 2, false, (o, opt, positive) -> o.addApiDocRoots(opt[1]));
+        register("linkoffline", 3, false, (o, opt, positive) -> o.addApiDocRootsOffline(opt[1], opt[2]));
+        register("contextPattern", 3, false, (o, opt, positive) -> {
             RelationDirection d;
             RelationType rt;
             try {
                 d = RelationDirection.valueOf(opt[2].toUpperCase());
                 if (opt[1].equalsIgnoreCase("all")) {
-                    contextRelationPattern = new RelationPattern(d);
+                    o.contextRelationPattern = new RelationPattern(d);
                 } else {
                     rt = RelationType.valueOf(opt[1].toUpperCase());
-                    contextRelationPattern.addRelation(rt, d);
+                    o.contextRelationPattern = new RelationPattern(o.contextRelationPattern);
+                    o.contextRelationPattern.addRelation(rt, d);
                 }
             } catch (IllegalArgumentException e) {
 
             }
-
-        } else if (matchOption(opt[0], "nodesep", true)) {
+        });
+        option("nodesep", (o, opt, positive) -> {
             try {
-                nodeSep = positive ? Double.parseDouble(opt[1]) : 0.25;
+                o.nodeSep = positive ? Double.parseDouble(opt[1]) : 0.25;
             } catch (NumberFormatException e) {
                 System.err.println("Skipping invalid nodesep " + opt[1]);
             }
-        } else if (matchOption(opt[0], "ranksep", true)) {
+        });
+        option("ranksep", (o, opt, positive) -> {
             try {
-                rankSep = positive ? Double.parseDouble(opt[1]) : 0.5;
+                o.rankSep = positive ? Double.parseDouble(opt[1]) : 0.5;
             } catch (NumberFormatException e) {
                 System.err.println("Skipping invalid ranksep " + opt[1]);
             }
-        } else if (matchOption(opt[0], "dotexecutable")) {
-            dotExecutable = opt[1];
-        } else
-            ; // Do nothing, javadoc will handle the option or complain, if needed.
+        });
+        register("dotexecutable", 2, false, (o, opt, positive) -> o.dotExecutable = opt[1]);
+        option("threads", (o, opt, positive) -> {
+            try {
+                o.threads = positive ? Integer.parseInt(opt[1]) : 1;
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping invalid threads " + opt[1]);
+            }
+        });
+        option("dotprocesses", (o, opt, positive) -> {
+            try {
+                o.dotProcesses = positive ? Integer.parseInt(opt[1]) : Runtime.getRuntime().availableProcessors();
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping invalid dotprocesses " + opt[1]);
+            }
+        });
+        option("dotbatch", (o, opt, positive) -> {
+            try {
+                o.dotBatchSize = positive ? Integer.parseInt(opt[1]) : 16;
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping invalid dotbatch " + opt[1]);
+            }
+        });
+        option("dottimeout", (o, opt, positive) -> {
+            try {
+                o.dotTimeout = positive ? Integer.parseInt(opt[1]) : 300;
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping invalid dottimeout " + opt[1]);
+            }
+        });
+        option("dotcache", (o, opt, positive) -> o.dotCache = positive ? opt[1] : null);
+        option("dotcachesize", (o, opt, positive) -> {
+            try {
+                o.dotCacheSize = positive ? Integer.parseInt(opt[1]) : 64;
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping invalid dotcachesize " + opt[1]);
+            }
+        });
+    }
+
+    /**
+     * Return the number of arguments associated with the specified option. The
+     * return value includes the actual option. Will return 0 if the option is not
+     * supported.
+     */
+    public static int optionLength(String option) {
+        OptionName name = OPTION_NAMES.get(option);
+        return name != null ? name.length : 0;
+    }
+
+    /** Set the options based on a single option and its arguments */
+    void setOption(String[] opt) {
+        if (frozen) {
+            throw new IllegalStateException("Cannot change frozen options");
+        }
+        OptionName name = OPTION_NAMES.get(opt[0]);
+        if (name == null) {
+            return; // Do nothing, javadoc will handle the option or complain, if needed.
+        }
+        apply(name, opt);
+    }
+
+    private void apply(OptionName name, String[] opt) {
+        // -hide may be given without a pattern
+        if (name.setter != HIDE && name.length > opt.length) {
+            System.err.println("Skipping option '" + opt[0] + "', missing argument");
+            return;
+        }
+        name.setter.set(this, opt, name.positive);
+    }
+
+    /**
+     * An option resolved to its setter along with its arguments, so that
+     * applying it again takes no parsing or lookup
+     */
+    static class Mutation {
+        private final OptionName name;
+        private final String[] opt;
+
+        private Mutation(OptionName name, String[] opt) {
+            this.name = name;
+            this.opt = opt;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" ", opt);
+        }
+    }
+
+    /**
+     * Compile an option and its arguments, returning null if the option is
+     * not one that {@link #setOption(String[])} applies
+     */
+    static Mutation compile(String[] opt) {
+        OptionName name = opt.length > 0 ? OPTION_NAMES.get(opt[0]) : null;
+        return name != null ? new Mutation(name, opt) : null;
+    }
+
+    /** Apply compiled options, in turn, as {@link #setOption(String[])} would */
+    void apply(List<Mutation> mutations) {
+        if (frozen && !mutations.isEmpty()) {
+            throw new IllegalStateException("Cannot change frozen options");
+        }
+        for (Mutation mutation : mutations) {
+            apply(mutation.name, mutation.opt);
+        }
     }
 
     /**
@@ -979,32 +1196,32 @@ public class Options implements Cloneable, OptionProvider {
     }
 
     private void tryFetch(String docUrl, String packageListUrl) {
-        BufferedReader br = null;
         packageListUrl = fixApiDocRoot(packageListUrl);
         String finalDocUrl = docUrl == null ? null : fixApiDocRoot(docUrl);
-        for (String suffix : List.of("package-list", "element-list")) {
-            try {
-                URL url = new URL(packageListUrl + suffix);
-                br = new BufferedReader(new InputStreamReader(url.openStream()));
-                String line;
-                while ((line = br.readLine()) != null) {
-                    if (!line.startsWith("module:")) {
-                        line = line + ".";
-                        Pattern pattern = Pattern.compile(line.replace(".", "\\.") + "[^\\.]*");
-                        apiDocMap.put(pattern, finalDocUrl == null ? packageListUrl : finalDocUrl);
-                    }
-                }
-                break;
-            } catch (IOException e) {
-                System.err.println("Errors happened while accessing the " + suffix + " file at " + packageListUrl);
-            } finally {
-                if (br != null) {
-                    try {
-                        br.close();
-                    } catch (IOException e) {
-                    }
-                }
-            }
+        if (links == null) {
+            links = new LinkCache(linkCache == null ? null : new File(linkCache), offline);
+        }
+        List<String> packages = links.getPackages(packageListUrl);
+        if (packages != null) {
+            apiDocMap = apiDocMap.withPackages(packages, finalDocUrl == null ? packageListUrl : finalDocUrl);
+        }
+    }
+
+    /**
+     * Apply the <code>-link</code>, <code>-linkoffline</code> and
+     * <code>-apidocmap</code> options of the command line, in their order.
+     * They are applied once all of the options are known, so that the package
+     * lists are fetched according to the <code>-linkcache</code> and
+     * <code>-offline</code> options wherever these appear.
+     */
+    void applyApiDocOptions() {
+        if (links == null) {
+            links = new LinkCache(linkCache == null ? null : new File(linkCache), offline);
+        }
+        List<String[]> pending = apiDocOptions;
+        apiDocOptions = List.of();
+        for (String[] opt : pending) {
+            setOption(opt);
         }
     }
 
@@ -1027,16 +1244,18 @@ public class Options implements Cloneable, OptionProvider {
      * @param apiDocMapFileName
      */
     void setApiDocMapFile(String apiDocMapFileName) {
+        // the patterns of a file are tried in the order of their names
+        Map<Pattern, String> map = new LinkedHashMap<>();
         try {
             InputStream is = new FileInputStream(apiDocMapFileName);
             Properties userMap = new Properties();
             userMap.load(is);
-            for (Map.Entry<?, ?> mapEntry : userMap.entrySet()) {
+            for (Map.Entry<?, ?> mapEntry : new TreeMap<>(userMap).entrySet()) {
                 try {
                     String thisRoot = (String) mapEntry.getValue();
                     if (thisRoot != null) {
                         thisRoot = fixApiDocRoot(thisRoot);
-                        apiDocMap.put(Pattern.compile((String) mapEntry.getKey()), thisRoot);
+                        map.put(Pattern.compile((String) mapEntry.getKey()), thisRoot);
                     } else {
                         System.err.println("No URL for pattern " + mapEntry.getKey());
                     }
@@ -1044,6 +1263,7 @@ public class Options implements Cloneable, OptionProvider {
                     System.err.println("Skipping bad pattern " + mapEntry.getKey());
                 }
             }
+            apiDocMap = apiDocMap.withPatterns(map);
         } catch (FileNotFoundException e) {
             System.err.println("File " + apiDocMapFileName + " was not found: " + e);
         } catch (IOException e) {
@@ -1052,26 +1272,20 @@ public class Options implements Cloneable, OptionProvider {
     }
 
     /**
-     * Returns the appropriate URL "root" for an external class name. It will match
-     * the class name against the regular expressions specified in the
-     * <code>apiDocMap</code>; if a match is found, the associated URL will be
-     * returned.
+     * Returns the appropriate URL "root" for an external class name. It will look
+     * the class name up in the <code>apiDocMap</code>, among the packages of the
+     * linked documentation and the regular expressions of the mapping files; if a
+     * match is found, the associated URL will be returned.
      * <p>
-     * <b>NOTE:</b> The match order of the match attempts is the one specified by
-     * the constructor of the api doc root, so it depends on the order of "-link"
-     * and "-apiDocMap" parameters.
+     * <b>NOTE:</b> The match order of the match attempts is the order of the
+     * "-link" and "-apiDocMap" parameters. Among the packages of the links, the
+     * longest one containing the class wins.
      */
     public String getApiDocRoot(Name className) {
         if (apiDocMap.isEmpty()) {
-            apiDocMap.put(Pattern.compile(".*"), DEFAULT_EXTERNAL_APIDOC);
+            return DEFAULT_EXTERNAL_APIDOC;
         }
-
-        for (Map.Entry<Pattern, String> mapEntry : apiDocMap.entrySet()) {
-            if (mapEntry.getKey().matcher(className).matches()) {
-                return mapEntry.getValue();
-            }
-        }
-        return null;
+        return apiDocMap.getRoot(className);
     }
 
     /** Trim and append a file separator to the string */
@@ -1098,10 +1312,7 @@ public class Options implements Cloneable, OptionProvider {
             return;
         }
 
-        List<String> tags = TagUtil.getTag(docTrees, p, "opt");
-        for (String tag : tags) {
-            setOption(StringUtil.tokenize(tag));
-        }
+        apply(run.getOptionTags().getOptions(p));
     }
 
     /**
@@ -1111,18 +1322,7 @@ public class Options implements Cloneable, OptionProvider {
      * @return true if the string matches.
      */
     public boolean matchesHideExpression(CharSequence s) {
-        for (Pattern hidePattern : hidePatterns) {
-            // micro-optimization because the "all pattern" is heavily used in UmlGraphDoc
-            if (hidePattern == allPattern) {
-                return true;
-            }
-
-            Matcher m = hidePattern.matcher(s);
-            if (strictMatching ? m.matches() : m.find()) {
-                return true;
-            }
-        }
-        return false;
+        return hideSet().matches(s);
     }
 
     /**
@@ -1132,13 +1332,7 @@ public class Options implements Cloneable, OptionProvider {
      * @return true if the string matches.
      */
     public boolean matchesIncludeExpression(CharSequence s) {
-        for (Pattern includePattern : includePatterns) {
-            Matcher m = includePattern.matcher(s);
-            if (strictMatching ? m.matches() : m.find()) {
-                return true;
-            }
-        }
-        return false;
+        return includeSet().matches(s);
     }
 
     /**
@@ -1148,13 +1342,34 @@ public class Options implements Cloneable, OptionProvider {
      * @return true if the string matches.
      */
     public boolean matchesCollPackageExpression(CharSequence s) {
-        for (Pattern collPattern : collPackages) {
-            Matcher m = collPattern.matcher(s);
-            if (strictMatching ? m.matches() : m.find()) {
-                return true;
-            }
+        return collPackageSet().matches(s);
+    }
+
+    /** Return the compiled hide patterns */
+    private PatternSet hideSet() {
+        PatternSet set = hideSet;
+        if (set == null || set.patterns != hidePatterns || set.strict != strictMatching) {
+            hideSet = set = new PatternSet(hidePatterns, strictMatching);
+        }
+        return set;
+    }
+
+    /** Return the compiled include patterns */
+    private PatternSet includeSet() {
+        PatternSet set = includeSet;
+        if (set == null || set.patterns != includePatterns || set.strict != strictMatching) {
+            includeSet = set = new PatternSet(includePatterns, strictMatching);
+        }
+        return set;
+    }
+
+    /** Return the compiled collection package patterns */
+    private PatternSet collPackageSet() {
+        PatternSet set = collPackageSet;
+        if (set == null || set.patterns != collPackages || set.strict != strictMatching) {
+            collPackageSet = set = new PatternSet(collPackages, strictMatching);
         }
-        return false;
+        return set;
     }
 
     // ----------------------------------------------------------------
@@ -1162,13 +1377,16 @@ public class Options implements Cloneable, OptionProvider {
     // ----------------------------------------------------------------
 
     public Options getOptionsFor(DocTrees docTrees, TypeElement cd) {
+        if (cd == null || run.getTags().getTag(cd, "opt").isEmpty()) {
+            return this;
+        }
         Options localOpt = getGlobalOptions();
         localOpt.setOptions(docTrees, cd);
         return localOpt;
     }
 
     public Options getOptionsFor(CharSequence name) {
-        return getGlobalOptions();
+        return this;
     }
 
     public Options getGlobalOptions() {
@@ -1191,7 +1409,7 @@ public class Options implements Cloneable, OptionProvider {
         StringBuilder sb = new StringBuilder();
         sb.append("UMLGRAPH OPTIONS\n");
         for (Field f : this.getClass().getDeclaredFields()) {
-            if (!Modifier.isStatic(f.getModifiers())) {
+            if (!Modifier.isStatic(f.getModifiers()) && !Modifier.isTransient(f.getModifiers())) {
                 f.setAccessible(true);
                 try {
                     sb.append(f.getName() + ":" + f.get(this) + "\n");
@@ -6,6 +6,7 @@ import javax.lang.model.element.ModuleElement;
 import javax.lang.model.element.PackageElement;
 import javax.lang.model.element.TypeElement;
 
+import org.umlgraph.doclet.util.ElementTagCache;
 import org.umlgraph.doclet.util.ElementUtil;
 
 import com.sun.source.util.DocTrees;
@@ -31,6 +32,9 @@ public class PackageView implements OptionProvider {
     private String outputPath;
     private Options opt;
     private DocTrees docTrees;
+    private ElementTagCache tags;
+    /** The frozen options of the view and of the classes without @opt tags */
+    private Options globalOptions, outsideOptions, outsideHiddenOptions, insideOptions, insideHiddenOptions;
 
     public PackageView(String outputFolder, PackageElement pd, DocletEnvironment root, OptionProvider parent) {
         this.parent = parent;
@@ -38,10 +42,26 @@ public class PackageView implements OptionProvider {
         this.docTrees = root.getDocTrees();
         this.matcher = new PackageMatcher(root, pd);
         this.opt = parent.getGlobalOptions();
+        this.tags = opt.run.getTags();
         this.opt.setOptions(docTrees, pd);
         ModuleElement md = ElementUtil.getModuleOf(root, pd);
         String pathPrefix = Runtime.version().major() > 10 && md != null ? md.getQualifiedName().toString() + "/" : "";
         this.outputPath = pathPrefix + pd.getQualifiedName().toString().replace('.', '/') + "/" + pd.getSimpleName().toString() + ".dot";
+
+        this.globalOptions = parent.getGlobalOptions();
+        this.globalOptions.setOption(new String[] { "output", outputPath });
+        this.globalOptions.setOption(HIDE);
+        this.globalOptions.freeze();
+        this.outsideOptions = parent.getGlobalOptions().freeze();
+        this.outsideHiddenOptions = parent.getGlobalOptions();
+        this.outsideHiddenOptions.setOption(HIDE);
+        this.outsideHiddenOptions.freeze();
+        this.insideOptions = parent.getGlobalOptions();
+        this.insideOptions.showQualified = false;
+        this.insideOptions.freeze();
+        this.insideHiddenOptions = insideOptions.clone();
+        this.insideHiddenOptions.setOption(HIDE);
+        this.insideHiddenOptions.freeze();
     }
 
     public String getDisplayName() {
@@ -49,24 +69,28 @@ public class PackageView implements OptionProvider {
     }
 
     public Options getGlobalOptions() {
-        Options go = parent.getGlobalOptions();
-
-        go.setOption(new String[] { "output", outputPath });
-        go.setOption(HIDE);
-
-        return go;
+        return globalOptions.clone();
     }
 
     public Options getOptionsFor(DocTrees dt, TypeElement cd) {
+        if (tags.getTag(cd, "opt").isEmpty()) {
+            boolean inPackage = matcher.matches(cd);
+            if (inPackage || this.opt.matchesIncludeExpression(cd.getQualifiedName())) {
+                if (this.opt.matchesHideExpression(cd.getQualifiedName())) {
+                    return inPackage ? insideHiddenOptions : outsideHiddenOptions;
+                }
+                return inPackage ? insideOptions : outsideOptions;
+            }
+            return outsideHiddenOptions;
+        }
         Options go = parent.getGlobalOptions();
         overrideForClass(go, cd);
         return go;
     }
 
     public Options getOptionsFor(CharSequence name) {
-        Options go = parent.getGlobalOptions();
-        overrideForClass(go, name);
-        return go;
+        boolean included = matcher.matches(name) || this.opt.matchesIncludeExpression(name);
+        return !included || this.opt.matchesHideExpression(name) ? insideHiddenOptions : insideOptions;
     }
 
     public void overrideForClass(Options opt, TypeElement cd) {
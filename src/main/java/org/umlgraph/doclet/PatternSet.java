@@ -0,0 +1,209 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.lang.model.element.Name;
+
+/**
+ * A list of patterns compiled for matching class and member names, such as
+ * the ones of the <code>-hide</code>, <code>-include</code> and
+ * <code>-collpackages</code> options.
+ * <p>
+ * With strict matching a name must match a pattern completely. Patterns made
+ * only of literal characters and <code>.</code>, such as
+ * <code>com.foo.Bar</code>, and those followed by <code>.*</code>, such as
+ * <code>java.*</code>, are then looked up in a trie, where <code>.</code>
+ * matches any character. The other patterns are merged into a single
+ * alternation, except for those using back references or inline flags, which
+ * would change meaning. Without strict matching all patterns are searched for
+ * through the alternation.
+ * <p>
+ * The result for each name is remembered. A set is immutable otherwise, and
+ * can be shared between the copies of the options and between threads.
+ */
+class PatternSet {
+    /** Characters that have a special meaning in a regular expression */
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+    /** Back references and inline flags */
+    private static final Pattern UNMERGEABLE = Pattern.compile("\\\\[1-9k]|\\(\\?[a-zA-Z-]+[:)]");
+
+    /** A trie node; the edges of the '.' wildcard lead to any */
+    private static class Node {
+        char[] chars = new char[0];
+        Node[] children = new Node[0];
+        Node any;
+        /** A pattern ends at this node */
+        boolean end;
+        /** A pattern ending at this node is followed by .* */
+        boolean prefix;
+
+        Node child(char c) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char c) {
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                chars = Arrays.copyOf(chars, chars.length + 1);
+                chars[chars.length - 1] = c;
+                children = Arrays.copyOf(children, children.length + 1);
+                children[children.length - 1] = child;
+            }
+            return child;
+        }
+    }
+
+    /** The patterns of the set, as specified */
+    final List<Pattern> patterns;
+    /** True if a name must match a pattern completely */
+    final boolean strict;
+    private final Node trie;
+    private final List<Pattern> regexes;
+    private final Map<CharSequence, Boolean> results = new ConcurrentHashMap<>();
+
+    PatternSet(List<Pattern> patterns, boolean strict) {
+        this.patterns = patterns;
+        this.strict = strict;
+        Node root = null;
+        List<Pattern> merged = new ArrayList<>();
+        List<Pattern> separate = new ArrayList<>();
+        for (Pattern pattern : patterns) {
+            if (strict && pattern.flags() == 0 && isSimple(pattern.pattern())) {
+                if (root == null) {
+                    root = new Node();
+                }
+                add(root, pattern.pattern());
+            } else if (pattern.flags() == 0 && !UNMERGEABLE.matcher(pattern.pattern()).find()) {
+                merged.add(pattern);
+            } else {
+                separate.add(pattern);
+            }
+        }
+        this.trie = root;
+        this.regexes = new ArrayList<>(separate);
+        if (merged.size() == 1) {
+            regexes.add(merged.get(0));
+        } else if (merged.size() > 1) {
+            StringBuilder alternation = new StringBuilder();
+            for (Pattern pattern : merged) {
+                alternation.append(alternation.length() == 0 ? "(?:" : "|(?:").append(pattern.pattern()).append(')');
+            }
+            try {
+                regexes.add(Pattern.compile(alternation.toString()));
+            } catch (PatternSyntaxException e) {
+                // e.g. the same named group in two patterns
+                regexes.addAll(merged);
+            }
+        }
+    }
+
+    /**
+     * Return true if the pattern consists of literal characters, escaped
+     * punctuation and '.', optionally followed by ".*"
+     */
+    private static boolean isSimple(String pattern) {
+        int length = pattern.endsWith(".*") ? pattern.length() - 2 : pattern.length();
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                if (++i == length || Character.isLetterOrDigit(pattern.charAt(i))) {
+                    return false;
+                }
+            } else if (c != '.' && METACHARACTERS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Add a pattern for which isSimple holds to the trie */
+    private static void add(Node node, String pattern) {
+        boolean prefix = pattern.endsWith(".*");
+        int length = prefix ? pattern.length() - 2 : pattern.length();
+        for (int i = 0; i < length; i++) {
+            char c = pattern.charAt(i);
+            if (c == '.') {
+                if (node.any == null) {
+                    node.any = new Node();
+                }
+                node = node.any;
+            } else {
+                node = node.addChild(c == '\\' ? pattern.charAt(++i) : c);
+            }
+        }
+        if (prefix) {
+            node.prefix = true;
+        } else {
+            node.end = true;
+        }
+    }
+
+    /** Return true if the trie holds a pattern matching s from position i on */
+    private static boolean matches(Node node, CharSequence s, int i) {
+        if (node.prefix && !hasLineTerminator(s, i)) {
+            return true;
+        }
+        if (i == s.length()) {
+            return node.end;
+        }
+        char c = s.charAt(i);
+        Node child = node.child(c);
+        if (child != null && matches(child, s, i + 1)) {
+            return true;
+        }
+        return node.any != null && !isLineTerminator(c) && matches(node.any, s, i + 1);
+    }
+
+    /** Return true if c is a line terminator, which '.' does not match */
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || (c | 1) == '\u2029';
+    }
+
+    private static boolean hasLineTerminator(CharSequence s, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (isLineTerminator(s.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true if the name matches one of the patterns */
+    boolean matches(CharSequence s) {
+        if (patterns.isEmpty()) {
+            return false;
+        }
+        // names and strings are immutable; other sequences are copied
+        CharSequence key = s instanceof String || s instanceof Name ? s : s.toString();
+        Boolean result = results.get(key);
+        if (result == null) {
+            result = evaluate(s);
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    private boolean evaluate(CharSequence s) {
+        if (trie != null && matches(trie, s, 0)) {
+            return true;
+        }
+        for (Pattern regex : regexes) {
+            if (strict ? regex.matcher(s).matches() : regex.matcher(s).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,199 @@
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+
+import org.umlgraph.doclet.UmlModel.ClassNode;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * Index of the relations among the classes of a javadoc run, as a class graph
+ * built with a given set of options would draw them: the relations declared
+ * through the Java language and the relation tags, along with the inferred
+ * ones when inference is enabled.
+ * <p>
+ * Each relation is recorded at both of its ends, as an outgoing relation of
+ * its source and an incoming one of its target, so that the relations of a
+ * class are found in time proportional to their number. Classes are identified
+ * by their qualified names; classes that javadoc does not know about appear
+ * under the names used in the relation tags.
+ * <p>
+ * The index is built once, in a single pass over the classes of the run, and
+ * cannot be modified afterwards; it can be read from several threads.
+ *
+ * @composed - - * Relation
+ */
+public class RelationIndex {
+
+    /** A relation between two classes */
+    public static class Relation {
+        /** The relation type */
+        public final RelationType type;
+        /** The qualified name of the source class */
+        public final String from;
+        /** The qualified name of the target class */
+        public final String to;
+
+        Relation(RelationType type, String from, String to) {
+            this.type = type;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Return the direction of the relation seen from the specified end,
+         * which is the source or the target of the relation
+         */
+        public RelationDirection getDirection(CharSequence className) {
+            return from.contentEquals(className) ? type.direction() : type.direction().inverse();
+        }
+
+        @Override
+        public String toString() {
+            return from + " " + type.lower + " " + to;
+        }
+    }
+
+    /** The relations of a class */
+    private static class Node {
+        final List<Relation> outgoing = new ArrayList<>();
+        final List<Relation> incoming = new ArrayList<>();
+        /** The directions of the relations with each related class, seen from this one */
+        final Map<String, RelationPattern> related = new HashMap<>();
+
+        void add(String other, RelationType type, RelationDirection direction) {
+            RelationPattern pattern = related.get(other);
+            if (pattern == null) {
+                pattern = new RelationPattern(RelationDirection.NONE);
+                related.put(other, pattern);
+            }
+            pattern.addRelation(type, direction);
+        }
+    }
+
+    private static final Node EMPTY = new Node();
+
+    private final Map<String, Node> nodes = new HashMap<>();
+
+    private RelationIndex() {
+    }
+
+    /**
+     * Build the index of the relations of the run drawn with the specified
+     * options. The index is built by the run's context, while holding its
+     * lock.
+     */
+    public static RelationIndex build(DocletEnvironment root, Options opt) {
+        RelationIndex index = new RelationIndex();
+        ClassGraph cg = new ClassGraph(root, opt, null, index.new Recorder());
+        for (TypeElement cd : opt.run.getModel().getClasses()) {
+            cg.printClass(cd, false);
+            cg.printRelations(cd);
+            if (opt.inferRelationships) {
+                cg.printInferredRelations(cd);
+            }
+            if (opt.inferDependencies) {
+                cg.printInferredDependencies(cd);
+            }
+        }
+        return index;
+    }
+
+    private Node node(String className) {
+        Node node = nodes.get(className);
+        if (node == null) {
+            node = new Node();
+            nodes.put(className, node);
+        }
+        return node;
+    }
+
+    private Node get(CharSequence className) {
+        Node node = nodes.get(className.toString());
+        return node != null ? node : EMPTY;
+    }
+
+    /** Return the relations of which the specified class is the source */
+    public List<Relation> getOutgoing(CharSequence className) {
+        return Collections.unmodifiableList(get(className).outgoing);
+    }
+
+    /** Return the relations of which the specified class is the target */
+    public List<Relation> getIncoming(CharSequence className) {
+        return Collections.unmodifiableList(get(className).incoming);
+    }
+
+    /**
+     * Return the directions of the relations between two classes, seen from
+     * the first one, or null if they are not related
+     */
+    public RelationPattern getRelation(CharSequence from, CharSequence to) {
+        RelationPattern pattern = get(from).related.get(to.toString());
+        return pattern != null ? new RelationPattern(pattern) : null;
+    }
+
+    /**
+     * Return true if the two classes share a relation matching the specified
+     * pattern, seen from the first one
+     */
+    public boolean isRelated(CharSequence from, CharSequence to, RelationPattern pattern) {
+        RelationPattern relation = get(from).related.get(to.toString());
+        return relation != null && pattern.matchesOne(relation);
+    }
+
+    /**
+     * Return the sorted names of the classes sharing with the specified class a
+     * relation matching the specified pattern, seen from that class
+     */
+    public Set<String> getRelated(CharSequence className, RelationPattern pattern) {
+        Set<String> related = new TreeSet<>();
+        for (Map.Entry<String, RelationPattern> e : get(className).related.entrySet()) {
+            if (pattern.matchesOne(e.getValue())) {
+                related.add(e.getKey());
+            }
+        }
+        return related;
+    }
+
+    /** Return the number of classes taking part in a relation */
+    public int size() {
+        return nodes.size();
+    }
+
+    /** Records the relations of the graph the index is built with */
+    private class Recorder implements ModelRenderer {
+        public void prologue(Options opt) {
+        }
+
+        public void printClass(Options opt, ClassNode node, String alias, String url, List<VariableElement> fields,
+                List<ExecutableElement> constructors, List<ExecutableElement> methods) {
+        }
+
+        public void printExternalClass(Options opt, Name className, String alias, String url) {
+        }
+
+        public void printRelation(Options opt, RelationType rt, Name fromName, String fromAlias, Name toName,
+                String toAlias, String tailLabel, String label, String headLabel) {
+            Relation relation = new Relation(rt, fromName.toString(), toName.toString());
+            Node from = node(relation.from), to = node(relation.to);
+            from.outgoing.add(relation);
+            from.add(relation.to, rt, rt.direction());
+            to.incoming.add(relation);
+            to.add(relation.from, rt, rt.direction().inverse());
+        }
+
+        public void epilogue() {
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.umlgraph.doclet;
 
+import java.util.Arrays;
+
 /**
  * A map from relation types to directions
  * 
@@ -24,6 +26,15 @@ public class RelationPattern {
         }
     }
 
+    /**
+     * Creates a new pattern with the same directions as the specified one
+     * 
+     * @param pattern The pattern to copy
+     */
+    public RelationPattern(RelationPattern pattern) {
+        directions = pattern.directions.clone();
+    }
+
     /**
      * Adds, eventually merging, a direction for the specified relation type
      * 
@@ -51,4 +62,8 @@ public class RelationPattern {
         return false;
     }
 
+    @Override
+    public String toString() {
+        return Arrays.toString(directions);
+    }
 }
@@ -31,4 +31,13 @@ public enum RelationType {
         this.style = style;
         this.backorder = backorder;
     }
+
+    /**
+     * Return the direction of a relation of this type, seen from its source:
+     * {@link RelationDirection#OUT} for the navigable associations and the
+     * dependencies, {@link RelationDirection#BOTH} for the others
+     */
+    public RelationDirection direction() {
+        return this == NAVASSOC || this == DEPEND ? RelationDirection.OUT : RelationDirection.BOTH;
+    }
 }
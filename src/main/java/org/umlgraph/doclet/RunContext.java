@@ -0,0 +1,106 @@
+package org.umlgraph.doclet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.umlgraph.doclet.util.ElementTagCache;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * The state of a single javadoc run: the model of its classes, and the
+ * indexes and caches built from javac's model.
+ * <p>
+ * The doclet creates the context when its run starts and closes it when the
+ * run ends, so that neither javac's model nor the caches outlive the run, and
+ * runs sharing a virtual machine do not share their caches. The context
+ * reaches the code building the diagrams through the options of the run,
+ * whose copies share it.
+ * <p>
+ * javac's model is not thread safe, and reading it may complete symbols,
+ * enter names or parse comments. The few places that may do so while graphs
+ * are built from several threads synchronize on the context; the rest of the
+ * graph building only reads what was already computed, and runs unlocked.
+ */
+class RunContext {
+
+    private volatile DocletEnvironment root;
+    private volatile ElementTagCache tags;
+    private volatile OptionTagCache optionTags;
+    private volatile HierarchyIndex hierarchy;
+    private UmlModel model;
+    /** The relation indexes of the run, by options */
+    private Map<String, RelationIndex> relations = new HashMap<>();
+
+    /** Create the context of the run that the environment belongs to */
+    RunContext(DocletEnvironment root) {
+        this.root = root;
+        this.tags = new ElementTagCache(root.getDocTrees(), this);
+        this.optionTags = new OptionTagCache(tags);
+        this.hierarchy = new HierarchyIndex(this);
+    }
+
+    /** Return the environment of the run */
+    DocletEnvironment getRoot() {
+        return check(root);
+    }
+
+    /** Return the index of the doc comment tags of the run's elements */
+    ElementTagCache getTags() {
+        return check(tags);
+    }
+
+    /** Return the compiled <code>@opt</code> tags of the run's elements */
+    OptionTagCache getOptionTags() {
+        return check(optionTags);
+    }
+
+    /** Return the index of the type hierarchy */
+    HierarchyIndex getHierarchy() {
+        return check(hierarchy);
+    }
+
+    /** Return the model of the run, building it the first time */
+    synchronized UmlModel getModel() {
+        if (model == null) {
+            model = new UmlModel(getRoot(), getTags(), this);
+        }
+        return model;
+    }
+
+    /**
+     * Return the index of the relations of the run drawn with the specified
+     * options. Indexes are shared by the option sets differing only in their
+     * output files.
+     */
+    synchronized RelationIndex getRelationIndex(Options opt) {
+        Map<String, RelationIndex> indexes = check(relations);
+        Options key = opt.clone();
+        key.outputFileName = null;
+        key.outputDirectory = null;
+        String options = key.toString();
+        RelationIndex index = indexes.get(options);
+        if (index == null) {
+            index = RelationIndex.build(getRoot(), opt);
+            indexes.put(options, index);
+        }
+        return index;
+    }
+
+    /** End the run, releasing javac's model and everything built from it */
+    synchronized void close() {
+        root = null;
+        tags = null;
+        optionTags = null;
+        hierarchy = null;
+        model = null;
+        relations = null;
+    }
+
+    private static <T> T check(T value) {
+        if (value == null) {
+            throw new IllegalStateException("The javadoc run has ended");
+        }
+        return value;
+    }
+}
@@ -6,8 +6,6 @@ import jdk.javadoc.doclet.DocletEnvironment;
 
 import javax.lang.model.element.TypeElement;
 
-import org.umlgraph.doclet.util.ElementUtil;
-
 /**
  * Matches every class that extends (directly or indirectly) a class matched by
  * the regular expression provided.
@@ -16,21 +14,18 @@ public class SubclassMatcher implements ClassMatcher {
 
     protected DocletEnvironment root;
     protected Pattern pattern;
+    private final HierarchyIndex.Match match;
 
-    public SubclassMatcher(DocletEnvironment root, Pattern pattern) {
-        this.root = root;
+    SubclassMatcher(RunContext run, Pattern pattern) {
+        this.root = run.getRoot();
         this.pattern = pattern;
+        // the class or one of its superclasses is the one we're looking for
+        this.match = new HierarchyIndex.Match(run.getHierarchy(), false,
+                c -> this.pattern.matcher(c.toString()).matches());
     }
 
     public boolean matches(TypeElement cd) {
-        // if it's the class we're looking for return
-        if (pattern.matcher(cd.toString()).matches()) {
-            return true;
-        }
-
-        // recurse on superclass, if available
-        TypeElement scd = ElementUtil.getTypeElement(cd.getSuperclass());
-        return scd == null ? false : matches(scd);
+        return match.matches(cd);
     }
 
     public boolean matches(CharSequence name) {
@@ -0,0 +1,182 @@
+package org.umlgraph.doclet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent cache of the diagrams laid out by dot, shared between runs.
+ * <p>
+ * An entry is named after the SHA-256 hash of the dot file, the version of the
+ * dot executable, and the output format, so a diagram whose graph did not
+ * change since a previous run is taken from the cache instead of running dot.
+ * Entries are hard-linked into the output directory, or copied where links
+ * are not possible. The modification time of an entry records its last use,
+ * and the least recently used entries are removed when the cache grows past
+ * its size limit.
+ */
+class SvgCache {
+
+    private static final String SUFFIX = ".svg";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final byte[] salt;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache in the specified directory
+     *
+     * @param directory  the cache directory, created if missing
+     * @param maxBytes   the size the cache is trimmed to when the run ends
+     * @param dotVersion the version reported by the dot executable
+     * @param format     the output format of dot
+     */
+    public SvgCache(File directory, long maxBytes, String dotVersion, String format) throws IOException {
+        this.directory = directory.toPath();
+        this.maxBytes = maxBytes;
+        this.salt = (dotVersion + '\n' + format + '\n').getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(this.directory);
+    }
+
+    /** Return the key of the diagram described by the specified dot file */
+    public String key(File dotFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available?!?", e); // Should not happen
+        }
+        digest.update(salt);
+        digest.update(Files.readAllBytes(dotFile.toPath()));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Place the cached diagram with the specified key in the target file.
+     *
+     * @return true on a hit, false if the diagram must be laid out
+     */
+    public boolean fetch(String key, File target) {
+        Path entry = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(entry)) {
+            misses.incrementAndGet();
+            return false;
+        }
+        try {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            // never leave the target linked to another entry, as dot overwrites in place
+            Files.deleteIfExists(target.toPath());
+            try {
+                Files.createLink(target.toPath(), entry);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(entry, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            // the entry may have been evicted by a concurrent run
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /** Add the diagram laid out in the specified file to the cache */
+    public void store(String key, File svgFile) {
+        Path entry = directory.resolve(key + SUFFIX);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            try {
+                Files.copy(svgFile.toPath(), temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot add " + svgFile + " to the diagram cache: " + e);
+        }
+    }
+
+    /** Remove the least recently used entries until the cache fits in its size limit */
+    public void evict() {
+        List<Path> entries = new ArrayList<>();
+        List<BasicFileAttributes> attributes = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path entry : stream) {
+                BasicFileAttributes a = Files.readAttributes(entry, BasicFileAttributes.class);
+                entries.add(entry);
+                attributes.add(a);
+                total += a.size();
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot list the diagram cache " + directory + ": " + e);
+            return;
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> attributes.get(i).lastModifiedTime()));
+        for (int i : order) {
+            if (total <= maxBytes) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entries.get(i));
+            } catch (IOException e) {
+                continue;
+            }
+            total -= attributes.get(i).size();
+        }
+    }
+
+    /**
+     * Return the version reported by the specified dot executable, or null if
+     * it cannot be run.
+     */
+    public static String dotVersion(String dotExecutable) {
+        try {
+            Process p = new ProcessBuilder(dotExecutable, "-V").redirectErrorStream(true).start();
+            ByteArrayOutputStream version = new ByteArrayOutputStream();
+            try (InputStream in = p.getInputStream()) {
+                in.transferTo(version);
+            }
+            if (p.waitFor() != 0) {
+                return null;
+            }
+            return version.toString(StandardCharsets.UTF_8.name()).trim();
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        long h = hits.get(), m = misses.get();
+        return "Diagram cache: " + h + " hits, " + m + " misses"
+                + (h + m == 0 ? "" : String.format(" (%.1f%% hit ratio)", 100.0 * h / (h + m)));
+    }
+}
@@ -26,6 +26,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import jdk.javadoc.doclet.Doclet;
 import jdk.javadoc.doclet.DocletEnvironment;
@@ -38,8 +41,8 @@ import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
 import javax.tools.Diagnostic;
 
+import org.umlgraph.doclet.util.ElementTagCache;
 import org.umlgraph.doclet.util.ElementUtil;
-import org.umlgraph.doclet.util.TagUtil;
 
 /**
  * Doclet API implementation
@@ -76,6 +79,7 @@ public class UmlGraph implements Doclet {
     public void init(Locale locale, Reporter reporter) {
         this.locale = locale;
         this.reporter = reporter;
+        standard.init(locale, reporter);
     }
 
     @Override
@@ -107,23 +111,33 @@ public class UmlGraph implements Doclet {
     /** Entry point through javadoc */
     public boolean run(DocletEnvironment root) {
         reporter.print(Diagnostic.Kind.NOTE, "UMLGraph doclet version " + Version.VERSION + " started");
-
-        List<View> views = buildViews(options, root, root);
-        if (views == null) {
-            return false;
-        }
+        options.applyApiDocOptions();
+        RunContext run = new RunContext(root);
+        options.run = run;
         try {
-            if (views.isEmpty()) {
-                buildGraph(reporter, root, options, null, null);
-            } else {
-                for (View view : views) {
-                    buildGraph(reporter, root, options, view, null);
+            List<View> views = buildViews(options, root, root);
+            if (views == null) {
+                return false;
+            }
+            try {
+                if (views.isEmpty()) {
+                    Options opt = buildOptions(root, options);
+                    buildGraph(reporter, root, opt, opt, null);
+                } else {
+                    buildGraphs(reporter, root, options, views);
                 }
+            } catch (IOException ioe) {
+                reporter.print(Diagnostic.Kind.ERROR, "UMLGraph doclet error : " + ioe);
             }
-        } catch (IOException ioe) {
-            reporter.print(Diagnostic.Kind.ERROR, "UMLGraph doclet error : " + ioe);
+            if (options.stats) {
+                reporter.print(Diagnostic.Kind.NOTE, run.getTags().toString());
+                reporter.print(Diagnostic.Kind.NOTE, run.getModel().getHiddenStatistics());
+            }
+            return true;
+        } finally {
+            options.run = null;
+            run.close();
         }
-        return true;
     }
 
     public static Options getCommentOptions() {
@@ -158,6 +172,47 @@ public class UmlGraph implements Doclet {
         return null;
     }
 
+    /**
+     * Builds and outputs the graphs of the views. The model of the run is
+     * analyzed once, and every view is then projected over it. With several
+     * threads the views are built concurrently, each writing its own file;
+     * the messages are reported in the order of the views.
+     */
+    private static void buildGraphs(Reporter reporter, DocletEnvironment root, Options options, List<View> views)
+            throws IOException {
+        options.run.getModel().analyze();
+        int threads = Math.min(options.threads, views.size());
+        for (View view : views) {
+            // output to the console must follow the order of the views
+            if (view.getGlobalOptions().outputFileName.equals("-")) {
+                threads = 1;
+            }
+        }
+        if (threads <= 1) {
+            for (View view : views) {
+                buildGraph(reporter, root, options, view, null);
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DeferredReporter>> graphs = new ArrayList<>();
+            for (View view : views) {
+                graphs.add(pool.submit(() -> {
+                    DeferredReporter deferred = new DeferredReporter();
+                    buildGraph(deferred, root, options, view, null);
+                    return deferred;
+                }));
+            }
+            for (Future<DeferredReporter> graph : graphs) {
+                UmlGraphDoc.await(graph).replay(reporter);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     /**
      * Builds and outputs a single graph according to the view overrides
      */
@@ -167,13 +222,9 @@ public class UmlGraph implements Doclet {
         }
         Options opt = op.getGlobalOptions();
         reporter.print(Diagnostic.Kind.NOTE, "Building " + op.getDisplayName());
-        Set<? extends Element> elements = root.getIncludedElements();
-        Set<TypeElement> classes = new HashSet<>();
-        for (Element element : elements) {
-            if (element instanceof TypeElement) {
-                classes.add((TypeElement) element);
-            }
-        }
+        // a context diagram only needs the classes around its center
+        List<TypeElement> classes = op instanceof ContextView ? ((ContextView) op).getContextClasses()
+                : opt.run.getModel().getClasses();
 
         ClassGraph c = new ClassGraph(root, op, contextDoc);
         c.prologue();
@@ -207,13 +258,15 @@ public class UmlGraph implements Doclet {
      *                    be the same as the srcRootDoc)
      */
     public static List<View> buildViews(Options opt, DocletEnvironment srcRootDoc, DocletEnvironment viewRootDoc) {
+        ElementTagCache viewTags = viewRootDoc == opt.run.getRoot() ? opt.run.getTags()
+                : new ElementTagCache(viewRootDoc.getDocTrees());
         if (opt.viewName != null) {
             TypeElement viewClass = findClass(viewRootDoc, opt.viewName, true);
             if (viewClass == null) {
                 System.out.println("View " + opt.viewName + " not found! Exiting without generating any output.");
                 return null;
             }
-            if (TagUtil.getTag(viewRootDoc, viewClass, "view").isEmpty()) {
+            if (viewTags.getTag(viewClass, "view").isEmpty()) {
                 System.out.println(viewClass + " is not a view!");
                 return null;
             }
@@ -221,7 +274,7 @@ public class UmlGraph implements Doclet {
                 System.out.println(viewClass + " is an abstract view, no output will be generated!");
                 return null;
             }
-            return List.of(buildView(srcRootDoc, viewClass, opt));
+            return List.of(buildView(srcRootDoc, viewTags, viewClass, opt));
         } else if (opt.findViews) {
             List<View> views = new ArrayList<>();
             Set<? extends Element> classes = viewRootDoc.getIncludedElements();
@@ -232,8 +285,8 @@ public class UmlGraph implements Doclet {
                     continue;
                 }
                 TypeElement element = (TypeElement) elmt;
-                if (TagUtil.getTag(viewRootDoc, element, "view").size() > 0 && !element.getModifiers().contains(Modifier.ABSTRACT)) {
-                    views.add(buildView(srcRootDoc, element, opt));
+                if (viewTags.getTag(element, "view").size() > 0 && !element.getModifiers().contains(Modifier.ABSTRACT)) {
+                    views.add(buildView(srcRootDoc, viewTags, element, opt));
                 }
             }
 
@@ -246,12 +299,13 @@ public class UmlGraph implements Doclet {
     /**
      * Builds a view along with its parent views, recursively
      */
-    private static View buildView(DocletEnvironment root, TypeElement viewClass, OptionProvider provider) {
+    private static View buildView(DocletEnvironment root, ElementTagCache viewTags, TypeElement viewClass,
+            OptionProvider provider) {
         TypeElement superClass = ElementUtil.getSuperclass(viewClass);
-        if (superClass == null || TagUtil.getTag(root, superClass, "view").isEmpty()) {
+        if (superClass == null || viewTags.getTag(superClass, "view").isEmpty()) {
             return new View(root, viewClass, provider);
         }
 
-        return new View(root, viewClass, buildView(root, superClass, provider));
+        return new View(root, viewClass, buildView(root, viewTags, superClass, provider));
     }
 }
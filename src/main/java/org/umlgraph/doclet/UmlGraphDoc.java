@@ -1,19 +1,23 @@
 package org.umlgraph.doclet;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
@@ -86,8 +90,11 @@ public class UmlGraphDoc implements Doclet {
     @Override
     public boolean run(DocletEnvironment root) {
         reporter.print(Diagnostic.Kind.NOTE, "UmlGraphDoc version " + Version.VERSION + ", running the standard doclet");
+        options.applyApiDocOptions();
         standard.run(root);
         reporter.print(Diagnostic.Kind.NOTE, "UmlGraphDoc version " + Version.VERSION + ", altering javadocs");
+        RunContext run = new RunContext(root);
+        options.run = run;
         try {
             Options opt = UmlGraph.buildOptions(root, this.options);
             // in javadoc enumerations are always printed
@@ -97,22 +104,70 @@ public class UmlGraphDoc implements Doclet {
             opt.strictMatching = true;
             reporter.print(Diagnostic.Kind.NOTE, opt.toString());
 
-            generatePackageDiagrams(root, reporter, opt, this.options.outputDirectory);
-            generateContextDiagrams(root, reporter, opt, this.options.outputDirectory);
+            if (opt.threads > 1) {
+                // the threads then mostly read what the analysis computed
+                run.getModel().analyze();
+            }
+            IncrementalBuild incremental = null;
+            if (opt.incremental) {
+                synchronized (run) {
+                    incremental = new IncrementalBuild(root, opt, this.options.outputDirectory);
+                }
+            }
+            GraphvizExecutor graphviz = new GraphvizExecutor(opt.dotExecutable, opt.dotProcesses, opt.dotBatchSize,
+                    opt.dotTimeout * 1000L, svgCache(reporter, opt));
+            List<File> failed;
+            try {
+                generatePackageDiagrams(root, reporter, opt, this.options.outputDirectory, graphviz, incremental);
+                generateContextDiagrams(root, reporter, opt, this.options.outputDirectory, graphviz, incremental);
+            } finally {
+                failed = graphviz.finish(reporter);
+            }
+            if (incremental != null) {
+                incremental.save(failed);
+                reporter.print(Diagnostic.Kind.NOTE, incremental.toString());
+            }
+            if (opt.stats) {
+                reporter.print(Diagnostic.Kind.NOTE, run.getTags().toString());
+                reporter.print(Diagnostic.Kind.NOTE, run.getModel().getHiddenStatistics());
+            }
         } catch (Throwable t) {
             reporter.print(Diagnostic.Kind.WARNING, "Error: " + t.toString());
             t.printStackTrace();
             return false;
+        } finally {
+            options.run = null;
+            run.close();
         }
         return true;
     }
 
+    /**
+     * Returns the cache of laid out diagrams specified by the options, or null
+     * if no cache is used.
+     */
+    private static SvgCache svgCache(Reporter reporter, Options opt) throws IOException {
+        if (opt.dotCache == null) {
+            return null;
+        }
+        String version = SvgCache.dotVersion(opt.dotExecutable == null ? "dot" : opt.dotExecutable);
+        if (version == null) {
+            reporter.print(Diagnostic.Kind.WARNING, "Cannot determine the version of dot, not using the diagram cache");
+            return null;
+        }
+        return new SvgCache(new File(opt.dotCache), opt.dotCacheSize * 1024L * 1024L, version, "svg");
+    }
+
     /**
      * Generates the package diagrams for all of the packages that contain classes
      * among those returned by RootDoc.class()
+     * <p>
+     * The diagrams are built and drawn concurrently, but the package summaries
+     * are altered, and the messages reported, in package name order.
      */
-    private static void generatePackageDiagrams(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder) throws IOException {
-        Set<Name> packages = new HashSet<>();
+    private static void generatePackageDiagrams(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder,
+            GraphvizExecutor graphviz, IncrementalBuild incremental) throws IOException {
+        Map<String, PackageElement> packageMap = new TreeMap<>();
         for (Element classDoc : root.getIncludedElements()) {
             PackageElement packageDoc = null;
             if (classDoc instanceof PackageElement) {
@@ -122,21 +177,68 @@ public class UmlGraphDoc implements Doclet {
             } else {
                 continue;
             }
-            if (!packages.contains(packageDoc.getQualifiedName())) {
-                packages.add(packageDoc.getQualifiedName());
-                OptionProvider view = new PackageView(outputFolder, packageDoc, root, opt);
-                UmlGraph.buildGraph(reporter, root, opt, view, packageDoc);
-                runGraphviz(opt.dotExecutable, outputFolder, ElementUtil.getModuleOf(root, packageDoc), packageDoc.getQualifiedName(), packageDoc.getSimpleName(), reporter);
-                alterHtmlDocs(opt, outputFolder, ElementUtil.getModuleOf(root, packageDoc), packageDoc.getQualifiedName(), packageDoc.getSimpleName(), "package-summary.html",
-                        Pattern.compile("(</[Hh]2>)|(<h1 title=\"Package( |\")).*"), reporter);
+            packageMap.putIfAbsent(packageDoc.getQualifiedName().toString(), packageDoc);
+        }
+        List<PackageElement> packages = new ArrayList<>(packageMap.values());
+
+        int threads = Math.min(opt.threads, packages.size());
+        if (threads <= 1) {
+            for (PackageElement packageDoc : packages) {
+                generatePackageDiagram(root, reporter, opt, outputFolder, graphviz, incremental, packageDoc);
+                alterPackageDocs(root, reporter, opt, outputFolder, packageDoc);
             }
+            return;
         }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DeferredReporter>> diagrams = new ArrayList<>();
+            for (PackageElement packageDoc : packages) {
+                diagrams.add(pool.submit(() -> {
+                    DeferredReporter deferred = new DeferredReporter();
+                    generatePackageDiagram(root, deferred, opt, outputFolder, graphviz, incremental, packageDoc);
+                    return deferred;
+                }));
+            }
+            for (int i = 0; i < packages.size(); i++) {
+                await(diagrams.get(i)).replay(reporter);
+                alterPackageDocs(root, reporter, opt, outputFolder, packages.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Generates the diagram of a single package. In an incremental run, a
+     * diagram not affected by the changed classes is left as it is.
+     */
+    private static void generatePackageDiagram(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder,
+            GraphvizExecutor graphviz, IncrementalBuild incremental, PackageElement packageDoc) throws IOException {
+        ModuleElement module = ElementUtil.getModuleOf(root, packageDoc);
+        if (incremental != null && !incremental.isPackageStale(packageDoc, new File(outputFolder,
+                diagramPath(module, packageDoc.getQualifiedName(), packageDoc.getSimpleName()) + ".svg"))) {
+            return;
+        }
+        OptionProvider view = new PackageView(outputFolder, packageDoc, root, opt);
+        UmlGraph.buildGraph(reporter, root, opt, view, packageDoc);
+        runGraphviz(graphviz, outputFolder, module, packageDoc.getQualifiedName(), packageDoc.getSimpleName());
+    }
+
+    /**
+     * Inserts the package diagram in the package summary
+     */
+    private static void alterPackageDocs(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder,
+            PackageElement packageDoc) throws IOException {
+        alterHtmlDocs(opt, outputFolder, ElementUtil.getModuleOf(root, packageDoc), packageDoc.getQualifiedName(), packageDoc.getSimpleName(), "package-summary.html",
+                InsertionPointLocator.PACKAGE, reporter);
     }
 
     /**
      * Generates the context diagram for a single class
      */
-    private static void generateContextDiagrams(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder) throws IOException {
+    private static void generateContextDiagrams(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder,
+            GraphvizExecutor graphviz, IncrementalBuild incremental) throws IOException {
         Set<TypeElement> classDocs = new TreeSet<>(new Comparator<>() {
             public int compare(TypeElement cd1, TypeElement cd2) {
                 return cd1.getSimpleName().toString().compareTo(cd2.getSimpleName().toString());
@@ -148,58 +250,138 @@ public class UmlGraphDoc implements Doclet {
             }
         }
 
-        ContextView view = null;
-        for (TypeElement classDoc : classDocs) {
-            try {
+        List<TypeElement> classes = new ArrayList<>(classDocs);
+        int threads = Math.min(opt.threads, classes.size());
+        if (threads <= 1) {
+            ContextView view = null;
+            for (TypeElement classDoc : classes) {
+                view = generateContextDiagram(root, reporter, opt, outputFolder, graphviz, incremental, view, classDoc);
+            }
+            return;
+        }
+
+        // Every worker takes the next class in turn, using a context view of
+        // its own; the messages are reported in class order once all are done
+        DeferredReporter[] reporters = new DeferredReporter[classes.size()];
+        AtomicInteger next = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(() -> {
+                ContextView view = null;
+                for (int c; (c = next.getAndIncrement()) < classes.size();) {
+                    reporters[c] = new DeferredReporter();
+                    view = generateContextDiagram(root, reporters[c], opt, outputFolder, graphviz, incremental, view, classes.get(c));
+                }
+                return null;
+            });
+        }
+        try {
+            runWorkers(workers);
+        } finally {
+            for (DeferredReporter deferred : reporters) {
+                if (deferred != null) {
+                    deferred.replay(reporter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the context diagram for a single class, moving the context view
+     * used for a previous class, if any, to the new center.
+     * <p>
+     * The diagram is laid out by the executor. In an incremental run, a
+     * diagram not affected by the changed classes is left as it is, and only
+     * the HTML is altered.
+     *
+     * @return the context view
+     */
+    private static ContextView generateContextDiagram(DocletEnvironment root, Reporter reporter, Options opt, String outputFolder,
+            GraphvizExecutor graphviz, IncrementalBuild incremental, ContextView view, TypeElement classDoc) {
+        try {
+            ModuleElement module = ElementUtil.getModuleOf(root, classDoc);
+            Name packageName = ElementUtil.getPackageOf(root, classDoc).getQualifiedName();
+            if (incremental == null || incremental.isContextStale(classDoc, new File(outputFolder,
+                    diagramPath(module, packageName, classDoc.getSimpleName()) + ".svg"))) {
                 if (view == null) {
                     view = new ContextView(outputFolder, classDoc, root, opt);
                 } else {
                     view.setContextCenter(classDoc);
                 }
                 UmlGraph.buildGraph(reporter, root, opt, view, classDoc);
-                runGraphviz(opt.dotExecutable, outputFolder, ElementUtil.getModuleOf(root, classDoc), ElementUtil.getPackageOf(root, classDoc).getQualifiedName(), classDoc.getSimpleName(), reporter);
-                alterHtmlDocs(opt, outputFolder, ElementUtil.getModuleOf(root, classDoc), ElementUtil.getPackageOf(root, classDoc).getQualifiedName(), classDoc.getSimpleName(),
-                        classDoc.getSimpleName() + ".html",
-                        Pattern.compile(".*(Class|Interface|Enum) " + classDoc.getSimpleName() + ".*"), reporter);
-            } catch (Exception e) {
-                throw new RuntimeException("Error generating " + classDoc.getSimpleName(), e);
+                runGraphviz(graphviz, outputFolder, module, packageName, classDoc.getSimpleName());
             }
+            alterHtmlDocs(opt, outputFolder, module, packageName, classDoc.getSimpleName(),
+                    classDoc.getSimpleName() + ".html",
+                    InsertionPointLocator.forClass(classDoc.getSimpleName()), reporter);
+        } catch (Exception e) {
+            throw new RuntimeException("Error generating " + classDoc.getSimpleName(), e);
         }
+        return view;
     }
 
     /**
-     * Runs Graphviz dot building both a diagram (in png format) and a client side
-     * map for it.
+     * Runs the workers on a pool of as many threads, and waits for all of them
+     * to finish. The first failure is rethrown.
      */
-    private static void runGraphviz(String dotExecutable, String outputFolder, ModuleElement module, Name packageName, Name name, Reporter reporter) {
-        if (dotExecutable == null) {
-            dotExecutable = "dot";
-        }
-        String fileName = packageName.toString().replace(".", "/") + "/" + name;
-        if (Runtime.version().major() > 10 && module != null) {
-            fileName = module.getQualifiedName().toString() + '/' + fileName;
+    private static void runWorkers(List<Callable<Void>> workers) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(workers.size());
+        try {
+            List<Future<Void>> results = new ArrayList<>();
+            for (Callable<Void> worker : workers) {
+                results.add(pool.submit(worker));
+            }
+            for (Future<Void> result : results) {
+                await(result);
+            }
+        } finally {
+            pool.shutdownNow();
         }
-        File dotFile = new File(outputFolder, fileName + ".dot");
-        File svgFile = new File(outputFolder, fileName + ".svg");
+    }
 
+    /**
+     * Waits for the result of a task, rethrowing the exception the task failed
+     * with, if any.
+     */
+    static <T> T await(Future<T> result) throws IOException {
         try {
-            Process p = Runtime.getRuntime().exec(new String[] { dotExecutable, "-Tsvg", "-o",
-                    svgFile.getAbsolutePath(), dotFile.getAbsolutePath() });
-            BufferedReader reader = new BufferedReader(new InputStreamReader(p.getErrorStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                reporter.print(Diagnostic.Kind.WARNING, line);
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while generating the diagrams", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-            int result = p.waitFor();
-            if (result != 0) {
-                reporter.print(Diagnostic.Kind.WARNING, "Errors running Graphviz on " + dotFile);
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Ensure that dot is in your path and that its path does not contain spaces");
+            throw new RuntimeException(cause);
         }
     }
 
+    /**
+     * Queues the layout of a diagram into svg format with Graphviz dot.
+     */
+    private static void runGraphviz(GraphvizExecutor graphviz, String outputFolder, ModuleElement module, Name packageName, Name name) {
+        String fileName = diagramPath(module, packageName, name);
+        graphviz.submit(new File(outputFolder, fileName + ".dot"), new File(outputFolder, fileName + ".svg"));
+    }
+
+    /**
+     * Returns the path of a diagram, relative to the output folder and without
+     * an extension.
+     */
+    private static String diagramPath(ModuleElement module, Name packageName, Name name) {
+        String fileName = packageName.toString().replace(".", "/") + "/" + name;
+        if (Runtime.version().major() > 10 && module != null) {
+            fileName = module.getQualifiedName().toString() + '/' + fileName;
+        }
+        return fileName;
+    }
+
     // Format string for the uml image div tag.
     private static final String UML_DIV_TAG = "<div align=\"center\">"
             + "<object width=\"100%%\" height=\"100%%\" type=\"image/svg+xml\" data=\"%1$s.svg\" alt=\"Package class diagram package %1$s\" border=0></object>"
@@ -226,64 +408,33 @@ public class UmlGraphDoc implements Doclet {
      * point.
      */
     private static void alterHtmlDocs(Options opt, String outputFolder, ModuleElement module, Name packageName, Name className,
-            String htmlFileName, Pattern insertPointPattern, Reporter reporter) throws IOException {
+            String htmlFileName, InsertionPointLocator insertPoint, Reporter reporter) throws IOException {
         // setup files
         String prefix = Runtime.version().major() > 10 && module != null ? module.getQualifiedName().toString() + '/' : "";
         File output = new File(outputFolder, prefix + packageName.toString().replace(".", "/"));
         File htmlFile = new File(output, htmlFileName);
-        File alteredFile = new File(htmlFile.getAbsolutePath() + ".uml");
         if (!htmlFile.exists()) {
             System.err.println("Expected file not found: " + htmlFile.getAbsolutePath());
             return;
         }
 
-        // parse & rewrite
-        BufferedWriter writer = null;
-        BufferedReader reader = null;
-        boolean matched = false;
-        try {
-            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(alteredFile), opt.outputEncoding));
-            reader = new BufferedReader(new InputStreamReader(new FileInputStream(htmlFile), opt.outputEncoding));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                writer.write(line);
-                writer.newLine();
-                if (!matched && insertPointPattern.matcher(line).matches()) {
-                    matched = true;
-
-                    String tag;
-                    if (opt.autoSize) {
-                        tag = String.format(UML_AUTO_SIZED_DIV_TAG, className);
-                    } else {
-                        tag = String.format(UML_DIV_TAG, className);
-                    }
-                    if (opt.collapsibleDiagrams) {
-                        tag = String.format(EXPANDABLE_UML, tag, "Show UML class diagram", "Hide UML class diagram");
-                    }
-                    writer.write("<!-- UML diagram added by UMLGraph version " + Version.VERSION + " (http://www.spinellis.gr/umlgraph/) -->");
-                    writer.newLine();
-                    writer.write(tag);
-                    writer.newLine();
-                }
-            }
-        } finally {
-            if (writer != null) {
-                writer.close();
-            }
-            if (reader != null) {
-                reader.close();
-            }
+        String tag;
+        if (opt.autoSize) {
+            tag = String.format(UML_AUTO_SIZED_DIV_TAG, className);
+        } else {
+            tag = String.format(UML_DIV_TAG, className);
         }
+        if (opt.collapsibleDiagrams) {
+            tag = String.format(EXPANDABLE_UML, tag, "Show UML class diagram", "Hide UML class diagram");
+        }
+        String newline = System.lineSeparator();
+        String text = "<!-- UML diagram added by UMLGraph version " + Version.VERSION + " (http://www.spinellis.gr/umlgraph/) -->"
+                + newline + tag + newline;
 
-        // if altered, delete old file and rename new one to the old file name
-        if (matched) {
-            htmlFile.delete();
-            alteredFile.renameTo(htmlFile);
-        } else {
-            reporter.print(Diagnostic.Kind.NOTE, "Warning, could not find a line that matches the pattern '"
-                    + insertPointPattern.pattern() + "'.\n Class diagram reference not inserted");
-            alteredFile.delete();
+        // splice the diagram in, replacing the file
+        if (!HtmlInjector.insertAfter(htmlFile, Charset.forName(opt.outputEncoding), insertPoint, text)) {
+            reporter.print(Diagnostic.Kind.NOTE, "Warning, could not find the " + insertPoint
+                    + ".\n Class diagram reference not inserted");
         }
     }
 }
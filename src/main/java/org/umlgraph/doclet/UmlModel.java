@@ -0,0 +1,547 @@
+/*
+ * Create a graphviz graph based on the classes in the specified java
+ * source files.
+ *
+ * (C) Copyright 2002-2010 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import static org.umlgraph.doclet.StringUtil.tokenize;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.Name;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.NoType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.umlgraph.doclet.util.ElementTagCache;
+import org.umlgraph.doclet.util.ElementUtil;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+/**
+ * In-memory model of the classes processed by a javadoc run: the class nodes,
+ * their members, and the typed edges among them.
+ * <p>
+ * The model holds what does not depend on the options: the relations declared
+ * through the Java language and through the relation tags, and the candidate
+ * associations and dependencies used for inference. Which of them appear in a
+ * diagram is decided by {@link ClassGraph} according to the options of each
+ * view, and the result is emitted by a {@link ModelRenderer}. The model is
+ * built once per run, by the run's {@link RunContext}, and shared by all the
+ * diagrams generated in it.
+ * <p>
+ * The model reads javac's model while holding the lock of the run's context.
+ * Once the classes are analyzed, graphs can be built from it concurrently:
+ * the nodes of the classes met afterwards are created under the same lock.
+ *
+ * @composed - - * ClassNode
+ * @composed - - * Edge
+ */
+public class UmlModel {
+
+    private final Elements elementUtils;
+    private final ElementTagCache tags;
+    /** The lock guarding the reads of javac's model */
+    private final Object lock;
+    private final Types types;
+    private final JavaFileManager fileManager;
+    private final TypeElement collectionClassDoc;
+    private final TypeElement mapClassDoc;
+    private final List<TypeElement> classes;
+    private final Map<Name, TypeElement> classesByName = new HashMap<>();
+    private final Map<Name, Integer> classIndexes = new HashMap<>();
+    private final Map<TypeElement, ClassNode> nodes = new ConcurrentHashMap<>();
+    private final AtomicLong hiddenLookups = new AtomicLong();
+    private final AtomicLong hideChecksSaved = new AtomicLong();
+
+    UmlModel(DocletEnvironment root, ElementTagCache tags, Object lock) {
+        this.elementUtils = root.getElementUtils();
+        this.tags = tags;
+        this.lock = lock;
+        this.types = root.getTypeUtils();
+        this.fileManager = root.getJavaFileManager();
+        this.collectionClassDoc = elementUtils.getTypeElement("java.util.Collection");
+        this.mapClassDoc = elementUtils.getTypeElement("java.util.Map");
+
+        // Keep the order javadoc reports the classes in, so that the
+        // diagrams are generated the same way on every run
+        Set<TypeElement> included = new LinkedHashSet<>();
+        for (Element element : root.getIncludedElements()) {
+            if (element instanceof TypeElement) {
+                included.add((TypeElement) element);
+            }
+        }
+        this.classes = Collections.unmodifiableList(new ArrayList<>(included));
+        for (TypeElement c : classes) {
+            classIndexes.put(c.getQualifiedName(), classIndexes.size());
+            classesByName.put(c.getQualifiedName(), c);
+            getNode(c);
+        }
+    }
+
+    /** Return the classes included in the run, in the order javadoc lists them */
+    public List<TypeElement> getClasses() {
+        return classes;
+    }
+
+    /** Return the included class with the specified name, or null */
+    public TypeElement getIncludedClass(Name qualifiedName) {
+        return classesByName.get(qualifiedName);
+    }
+
+    /**
+     * Return the position of the included class with the specified name in the
+     * list returned by {@link #getClasses()}, or -1
+     */
+    public int getIndex(Name qualifiedName) {
+        Integer index = classIndexes.get(qualifiedName);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * Return the node of the specified class. Nodes of classes that were not
+     * included in the run, such as library superclasses, are created on
+     * demand.
+     */
+    public ClassNode getNode(TypeElement c) {
+        ClassNode node = nodes.get(c);
+        if (node == null) {
+            synchronized (lock) {
+                node = nodes.computeIfAbsent(c, ClassNode::new);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Analyze the classes of the run up front: parse the comments of the
+     * classes and of their members, and infer their associations and
+     * dependencies. The graphs built afterwards mostly read what was
+     * computed.
+     */
+    public void analyze() {
+        synchronized (lock) {
+            for (TypeElement c : classes) {
+                ClassNode node = getNode(c);
+                tags.getTags(c);
+                for (Element member : node.getFields()) {
+                    tags.getTags(member);
+                }
+                for (Element member : node.getConstructors()) {
+                    tags.getTags(member);
+                }
+                for (Element member : node.getMethods()) {
+                    tags.getTags(member);
+                }
+                node.getAssociations();
+                node.getDependencies();
+            }
+        }
+    }
+
+    /**
+     * Count a lookup of an element's hidden state answered by a graph's memo
+     *
+     * @param hideCheck true if computing the state would have matched the
+     *                  element's name against the hide expressions
+     */
+    void countHiddenLookup(boolean hideCheck) {
+        hiddenLookups.incrementAndGet();
+        if (hideCheck) {
+            hideChecksSaved.incrementAndGet();
+        }
+    }
+
+    /** Number of hide expression evaluations saved by the graphs' memos */
+    public long getHideChecksSaved() {
+        return hideChecksSaved.get();
+    }
+
+    /** Return the statistics of the graphs' hidden state memos */
+    public String getHiddenStatistics() {
+        return "Hidden memo: " + hiddenLookups.get() + " lookups answered, " + hideChecksSaved.get()
+                + " hide expression evaluations saved";
+    }
+
+    /**
+     * Returns an array representing the imported classes of c. Disables the
+     * deprecation warning, which is output, because the imported classed are an
+     * implementation detail.
+     */
+    List<TypeMirror> importedClasses(TypeElement c) {
+        JavaFileObject source;
+        try {
+            source = fileManager.getJavaFileForInput(StandardLocation.SOURCE_PATH, c.getQualifiedName().toString(), JavaFileObject.Kind.SOURCE);
+        } catch (IOException e) {
+            source = null;
+        }
+
+        if (source == null) {
+            return Collections.emptyList();
+        }
+        return Collections.emptyList(); // c.importedClasses();
+    }
+
+    /**
+     * A class of the model along with its members and its outgoing edges
+     */
+    public class ClassNode {
+        private final TypeElement element;
+        private final List<VariableElement> fields;
+        private final List<VariableElement> enumConstants;
+        private final List<ExecutableElement> constructors;
+        private final List<ExecutableElement> methods;
+        private final List<Edge> relations;
+        private volatile List<FieldAssociation> associations;
+        private volatile List<Dependency> dependencies;
+
+        private ClassNode(TypeElement element) {
+            this.element = element;
+            this.fields = Collections.unmodifiableList(ElementUtil.getFields(element));
+            this.enumConstants = Collections.unmodifiableList(ElementUtil.getEnumConstants(element));
+            this.constructors = Collections.unmodifiableList(ElementUtil.getConstructors(element));
+            this.methods = Collections.unmodifiableList(ElementUtil.getMethods(element));
+            this.relations = Collections.unmodifiableList(declaredRelations());
+        }
+
+        public TypeElement getElement() {
+            return element;
+        }
+
+        public List<VariableElement> getFields() {
+            return fields;
+        }
+
+        public List<VariableElement> getEnumConstants() {
+            return enumConstants;
+        }
+
+        public List<ExecutableElement> getConstructors() {
+            return constructors;
+        }
+
+        public List<ExecutableElement> getMethods() {
+            return methods;
+        }
+
+        /**
+         * Return the relations declared by the class: its superclass, the
+         * extends tags, its interfaces and the relation tags, in this order.
+         */
+        public List<Edge> getRelations() {
+            return relations;
+        }
+
+        /**
+         * Return the associations that can be inferred from the non-static
+         * fields of the class.
+         */
+        public List<FieldAssociation> getAssociations() {
+            List<FieldAssociation> result = associations;
+            if (result == null) {
+                synchronized (lock) {
+                    return computeAssociations();
+                }
+            }
+            return result;
+        }
+
+        /** Compute the associations, unless another thread did, holding the lock */
+        private List<FieldAssociation> computeAssociations() {
+            List<FieldAssociation> result = associations;
+            if (result == null) {
+                result = new ArrayList<>();
+                for (VariableElement field : fields) {
+                    if (field.getModifiers().contains(Modifier.STATIC)) {
+                        continue;
+                    }
+                    TypeMirror type = field.asType();
+                    // skip primitives
+                    if (ElementUtil.isPrimitive(type) || ElementUtil.isType(type, TypeKind.WILDCARD) || ElementUtil.isType(type, TypeKind.TYPEVAR)) {
+                        continue;
+                    }
+                    TypeElement target = ElementUtil.getTypeElement(type);
+                    if (target != null) {
+                        result.add(new FieldAssociation(field, target));
+                    }
+                }
+                associations = result = Collections.unmodifiableList(result);
+            }
+            return result;
+        }
+
+        /**
+         * Return the types the class may depend on: the return and parameter
+         * types of its methods, the types of its fields, and its type
+         * arguments and their bounds, in this order. A type may appear more
+         * than once.
+         */
+        public List<Dependency> getDependencies() {
+            List<Dependency> result = dependencies;
+            if (result == null) {
+                synchronized (lock) {
+                    return computeDependencies();
+                }
+            }
+            return result;
+        }
+
+        /** Compute the dependencies, unless another thread did, holding the lock */
+        private List<Dependency> computeDependencies() {
+            List<Dependency> result = dependencies;
+            if (result == null) {
+                result = new ArrayList<>();
+                for (ExecutableElement method : methods) {
+                    result.add(new Dependency(method.getReturnType(), method, false));
+                    for (VariableElement parameter : method.getParameters()) {
+                        result.add(new Dependency(parameter.asType(), method, false));
+                    }
+                }
+                for (VariableElement field : fields) {
+                    result.add(new Dependency(field.asType(), field, true));
+                }
+                if (element.asType() instanceof DeclaredType) {
+                    for (TypeMirror type : ((DeclaredType) element.asType()).getTypeArguments()) {
+                        result.add(new Dependency(type, null, false));
+                    }
+                }
+                for (TypeParameterElement tv : element.getTypeParameters()) {
+                    for (TypeMirror type : tv.getBounds()) {
+                        result.add(new Dependency(type, null, false));
+                    }
+                }
+                dependencies = result = Collections.unmodifiableList(result);
+            }
+            return result;
+        }
+
+        private List<Edge> declaredRelations() {
+            List<Edge> edges = new ArrayList<>();
+            // avoid phantom classes, they may pop up when the source uses annotations
+            if ("".equals(element.getSimpleName().toString())) {
+                return edges;
+            }
+            // Generalization (through the Java superclass)
+            TypeMirror clazz = element.getSuperclass();
+            Element scd;
+            if (clazz == null || clazz.getKind() == TypeKind.NONE || !(clazz instanceof DeclaredType)) {
+                scd = null;
+            } else {
+                scd = ((DeclaredType) clazz).asElement();
+            }
+            TypeElement s = scd instanceof TypeElement ? (TypeElement) scd : null;
+            TypeElement sc = s != null && !s.getQualifiedName().toString().equals(Object.class.getName()) ? s : null;
+            if (sc != null && element.getKind() != ElementKind.ENUM) {
+                edges.add(new Edge(RelationType.EXTENDS, sc, sc.getQualifiedName(), false, null, null, null));
+            }
+            // Generalizations (through @extends tags)
+            for (String tag : tags.getTag(element, "extends")) {
+                TypeElement to = elementUtils.getTypeElement(tag);
+                edges.add(new Edge(RelationType.EXTENDS, to, to != null ? to.getQualifiedName() : elementUtils.getName(tag), true, null, null, null));
+            }
+            // Realizations (Java interfaces)
+            for (TypeMirror iface : element.getInterfaces()) {
+                TypeElement ic = ElementUtil.getTypeElement(iface);
+                if (ic != null) {
+                    edges.add(new Edge(RelationType.IMPLEMENTS, ic, ic.getQualifiedName(), false, null, null, null));
+                }
+            }
+            // Other associations
+            for (RelationType rt : new RelationType[] { RelationType.COMPOSED, RelationType.NAVCOMPOSED, RelationType.HAS,
+                    RelationType.NAVHAS, RelationType.ASSOC, RelationType.NAVASSOC, RelationType.DEPEND }) {
+                tagRelations(edges, rt);
+            }
+            return edges;
+        }
+
+        /**
+         * Add all relations for a given's class's tag
+         */
+        private void tagRelations(List<Edge> edges, RelationType rt) {
+            String tagname = rt.lower;
+            for (String tag : tags.getTag(element, tagname)) {
+                String t[] = tokenize(tag); // l-src label l-dst target
+                t = t.length == 1 ? new String[] { "-", "-", "-", t[0] } : t; // Shorthand
+                if (t.length != 4) {
+                    System.err.println("Error in " + element + "\n" + tagname
+                            + " expects four fields (l-src label l-dst target): " + tag);
+                    return;
+                }
+                TypeElement to = elementUtils.getTypeElement(t[3]);
+                edges.add(new Edge(rt, to, to != null ? to.getQualifiedName() : elementUtils.getName(t[3]), to == null, t[0], t[1], t[2]));
+            }
+        }
+    }
+
+    /**
+     * A typed edge going out of a class node
+     */
+    public static class Edge {
+        /** The relation type */
+        public final RelationType type;
+        /** The destination class; null if it is not known to javadoc */
+        public final TypeElement to;
+        /** The destination class's name */
+        public final Name toName;
+        /** True if the destination should be hidden according to its name only */
+        public final boolean byName;
+        public final String tailLabel;
+        public final String label;
+        public final String headLabel;
+
+        Edge(RelationType type, TypeElement to, Name toName, boolean byName, String tailLabel, String label, String headLabel) {
+            this.type = type;
+            this.to = to;
+            this.toName = toName;
+            this.byName = byName;
+            this.tailLabel = tailLabel;
+            this.label = label;
+            this.headLabel = headLabel;
+        }
+    }
+
+    /**
+     * An association that may be inferred from a field
+     */
+    public class FieldAssociation {
+        /** The field the association is inferred from */
+        public final VariableElement field;
+        /** The class of the field's type, or of its component type for arrays */
+        public final TypeElement target;
+        private volatile TypeElement elementTarget;
+        private volatile boolean elementTargetResolved;
+
+        FieldAssociation(VariableElement field, TypeElement target) {
+            this.field = field;
+            this.target = target;
+        }
+
+        /** True if the field is an array */
+        public boolean isArray() {
+            return ElementUtil.dimensions(field.asType()).endsWith("[]");
+        }
+
+        /** The qualified name of the field's type */
+        public CharSequence getTypeName() {
+            return ElementUtil.getQualifiedName(types, field.asType());
+        }
+
+        /**
+         * The class of the elements, if the field is a collection, or of the
+         * values, if it is a map; null if they can't be determined.
+         */
+        public TypeElement getElementTarget() {
+            if (!elementTargetResolved) {
+                TypeMirror type = field.asType();
+                TypeElement result = null;
+                List<? extends TypeMirror> argTypes = getInterfaceTypeArguments(collectionClassDoc, type);
+                if (argTypes != null && argTypes.size() == 1 && !argTypes.get(0).getKind().isPrimitive() && !ElementUtil.isType(argTypes.get(0), TypeKind.TYPEVAR)) {
+                    result = ElementUtil.getTypeElement(argTypes.get(0));
+                } else {
+                    argTypes = getInterfaceTypeArguments(mapClassDoc, type);
+                    if (argTypes != null && argTypes.size() == 2 && !argTypes.get(1).getKind().isPrimitive() && !ElementUtil.isType(argTypes.get(1), TypeKind.TYPEVAR)) {
+                        result = ElementUtil.getTypeElement(argTypes.get(1));
+                    }
+                }
+                elementTarget = result;
+                elementTargetResolved = true;
+            }
+            return elementTarget;
+        }
+    }
+
+    /**
+     * A type a class may depend on
+     */
+    public static class Dependency {
+        /** The type */
+        public final TypeMirror type;
+        /** The method or field using the type; null for type arguments and bounds */
+        public final Element member;
+        /** True if the type is the one of a field */
+        public final boolean field;
+        /**
+         * The class of the type; null for primitives, type variables and other
+         * types that do not refer to a class
+         */
+        public final TypeElement target;
+
+        Dependency(TypeMirror type, Element member, boolean field) {
+            this.type = type;
+            this.member = member;
+            this.field = field;
+            this.target = ElementUtil.isPrimitive(type)
+                    || ElementUtil.isType(type, TypeKind.TYPEVAR) || ElementUtil.isType(type, TypeKind.WILDCARD)
+                    || type instanceof NoType ? null : ElementUtil.getTypeElement(type);
+        }
+    }
+
+    private List<? extends TypeMirror> getInterfaceTypeArguments(Element iface, TypeMirror t) {
+        if (t instanceof DeclaredType) {
+            DeclaredType pt = (DeclaredType) t;
+            if (iface != null && iface.equals(pt.asElement())) {
+                return pt.getTypeArguments();
+            } else {
+                for (TypeMirror pti : ElementUtil.getInterfacesTypes(pt.asElement())) {
+                    List<? extends TypeMirror> result = getInterfaceTypeArguments(iface, pti);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+                TypeMirror superType = ElementUtil.getSuperclassType(pt);
+                if (superType != null && superType.getKind() != TypeKind.NONE) {
+                    return getInterfaceTypeArguments(iface, superType);
+                }
+            }
+        } else if (iface instanceof TypeElement) {
+            for (TypeMirror pti : ElementUtil.getInterfacesTypes((TypeElement) iface)) {
+                List<? extends TypeMirror> result = getInterfaceTypeArguments(iface, pti);
+                if (result != null) {
+                    return result;
+                }
+            }
+            TypeElement superType = ElementUtil.getSuperclass((TypeElement) iface);
+            if (superType != null && superType.asType().getKind() != TypeKind.NONE) {
+                return getInterfaceTypeArguments(iface, superType.asType());
+            }
+        }
+        return null;
+    }
+}
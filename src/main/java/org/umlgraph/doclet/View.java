@@ -17,16 +17,16 @@
 package org.umlgraph.doclet;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import javax.lang.model.element.TypeElement;
 
-import org.umlgraph.doclet.util.TagUtil;
-
 import jdk.javadoc.doclet.DocletEnvironment;
 import com.sun.source.util.DocTrees;
 
@@ -52,6 +52,24 @@ public class View implements OptionProvider {
     OptionProvider provider;
     List<String[]> globalOptions;
     DocletEnvironment root;
+    RunContext run;
+    /** The frozen global options, shared by the classes without overrides */
+    private Options base;
+    /** True if the overrides of the view and its parents are all known to it */
+    private boolean layered;
+    /**
+     * The overrides of the parents and of the view, in the order they apply;
+     * the ones without settings are left out
+     */
+    private final List<ClassMatcher> matchers = new ArrayList<>();
+    private final List<List<String[]>> settings = new ArrayList<>();
+    /** The number of overrides coming from the parents */
+    private int inherited;
+    /** The overrides matching each class and class name, as indexes in matchers */
+    private final Map<TypeElement, BitSet> classMatches = new ConcurrentHashMap<>();
+    private final Map<String, BitSet> nameMatches = new ConcurrentHashMap<>();
+    /** The frozen options of each set of matching overrides */
+    private final Map<BitSet, Options> overridden = new ConcurrentHashMap<>();
 
     /**
      * Builds a view given the class that contains its definition
@@ -60,7 +78,8 @@ public class View implements OptionProvider {
         this.viewDoc = c;
         this.provider = provider;
         this.root = root;
-        Map<String, List<String>> tags = TagUtil.getTags(root, viewDoc);
+        this.run = provider.getGlobalOptions().run;
+        Map<String, List<String>> tags = run.getTags().getTags(viewDoc);
         ClassMatcher currMatcher = null;
         // parse options, get the global ones, and build a map of the
         // pattern matched overrides
@@ -84,6 +103,19 @@ public class View implements OptionProvider {
                 }
             }
         }
+        layered = provider instanceof Options || provider instanceof View && ((View) provider).layered;
+        if (provider instanceof View) {
+            matchers.addAll(((View) provider).matchers);
+            settings.addAll(((View) provider).settings);
+        }
+        inherited = matchers.size();
+        for (Map.Entry<ClassMatcher, List<String[]>> override : optionOverrides.entrySet()) {
+            if (!override.getValue().isEmpty()) {
+                matchers.add(override.getKey());
+                settings.add(override.getValue());
+            }
+        }
+        base = getGlobalOptions().freeze();
     }
 
     /**
@@ -105,9 +137,9 @@ public class View implements OptionProvider {
             } else if (strings[0].equals("outgoingContext")) {
                 return new ContextMatcher(root, Pattern.compile(strings[1]), getGlobalOptions(), false);
             } else if (strings[0].equals("interface")) {
-                return new InterfaceMatcher(root, Pattern.compile(strings[1]));
+                return new InterfaceMatcher(run, Pattern.compile(strings[1]));
             } else if (strings[0].equals("subclass")) {
-                return new SubclassMatcher(root, Pattern.compile(strings[1]));
+                return new SubclassMatcher(run, Pattern.compile(strings[1]));
             } else {
                 System.err.println("Skipping @match tag, unknown match type, in view " + viewDoc);
             }
@@ -125,6 +157,14 @@ public class View implements OptionProvider {
     // ----------------------------------------------------------------
 
     public Options getOptionsFor(DocTrees dt, TypeElement cd) {
+        if (layered) {
+            Options localOpt = overridden(matches(cd));
+            if (!run.getTags().getTag(cd, "opt").isEmpty()) {
+                localOpt = localOpt.modifiable();
+                localOpt.setOptions(dt, cd);
+            }
+            return localOpt;
+        }
         Options localOpt = getGlobalOptions();
         overrideForClass(localOpt, cd);
         localOpt.setOptions(dt, cd);
@@ -132,12 +172,79 @@ public class View implements OptionProvider {
     }
 
     public Options getOptionsFor(CharSequence name) {
+        if (layered) {
+            return overridden(matches(name));
+        }
         Options localOpt = getGlobalOptions();
         overrideForClass(localOpt, name);
         return localOpt;
     }
 
+    /**
+     * Return the overrides of the view and its parents matching the specified
+     * class. Each matcher is asked once per class; the answers of the parents'
+     * matchers are taken from the parents.
+     */
+    private BitSet matches(TypeElement cd) {
+        BitSet result = classMatches.get(cd);
+        if (result == null) {
+            result = provider instanceof View ? (BitSet) ((View) provider).matches(cd).clone() : new BitSet();
+            for (int i = inherited; i < matchers.size(); i++) {
+                if (matchers.get(i).matches(cd)) {
+                    result.set(i);
+                }
+            }
+            classMatches.put(cd, result);
+        }
+        return result;
+    }
+
+    /** Return the overrides of the view and its parents matching the specified class name */
+    private BitSet matches(CharSequence className) {
+        String name = className.toString();
+        BitSet result = nameMatches.get(name);
+        if (result == null) {
+            result = provider instanceof View ? (BitSet) ((View) provider).matches(name).clone() : new BitSet();
+            for (int i = inherited; i < matchers.size(); i++) {
+                if (matchers.get(i).matches(name)) {
+                    result.set(i);
+                }
+            }
+            nameMatches.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Return the options resulting from the specified overrides. The settings
+     * of a set of overrides are applied once, and the frozen result is shared
+     * by all of the classes the set matches.
+     */
+    private Options overridden(BitSet matches) {
+        if (matches.isEmpty()) {
+            return base;
+        }
+        Options opt = overridden.get(matches);
+        if (opt == null) {
+            opt = base.clone();
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                for (String[] setting : settings.get(i)) {
+                    opt.setOption(setting);
+                }
+            }
+            opt.freeze();
+            Options previous = overridden.putIfAbsent(matches, opt);
+            if (previous != null) {
+                opt = previous;
+            }
+        }
+        return opt;
+    }
+
     public Options getGlobalOptions() {
+        if (base != null) {
+            return base.clone();
+        }
         Options go = provider.getGlobalOptions();
 
         boolean outputSet = false;
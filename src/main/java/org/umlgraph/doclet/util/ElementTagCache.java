@@ -0,0 +1,125 @@
+package org.umlgraph.doclet.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.lang.model.element.Element;
+
+import org.umlgraph.doclet.TagScanner;
+
+import com.sun.source.doctree.DocCommentTree;
+import com.sun.source.util.DocTrees;
+
+/**
+ * Run scoped index of the block tags found in the doc comments of the
+ * elements.
+ * <p>
+ * Every element's comment is parsed once, the first time its tags are
+ * requested, and kept as an immutable map from tag name to tag texts. The
+ * index belongs to the javadoc run that created the {@link DocTrees} it reads
+ * from, and is kept by the run's context for as long as the run lasts.
+ * Lookups may come from several threads; comments are parsed while holding
+ * the lock given to the index, as parsing them changes javac's state.
+ */
+public class ElementTagCache {
+
+    private final DocTrees docTrees;
+    private final Object lock;
+    private final Map<Element, Map<String, List<String>>> tags = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /** Create an empty index of the comments read from the doc trees */
+    public ElementTagCache(DocTrees docTrees) {
+        this.docTrees = docTrees;
+        this.lock = this;
+    }
+
+    /**
+     * Create an empty index of the comments read from the doc trees, parsing
+     * them while holding the specified lock
+     */
+    public ElementTagCache(DocTrees docTrees, Object lock) {
+        this.docTrees = docTrees;
+        this.lock = lock;
+    }
+
+    /**
+     * Return the tags of the specified element, keyed by tag name. The
+     * comment body is available under the "comment" key. The returned map and
+     * its lists cannot be modified.
+     */
+    public Map<String, List<String>> getTags(Element c) {
+        if (c == null) {
+            synchronized (lock) {
+                return parse(docTrees, c);
+            }
+        }
+        Map<String, List<String>> result = tags.get(c);
+        if (result == null) {
+            synchronized (lock) {
+                result = tags.get(c);
+                if (result == null) {
+                    misses.incrementAndGet();
+                    result = parse(docTrees, c);
+                    tags.put(c, result);
+                    return result;
+                }
+            }
+        }
+        hits.incrementAndGet();
+        return result;
+    }
+
+    /** Return the texts of the specified tag of the element, in order */
+    public List<String> getTag(Element c, String tagName) {
+        List<String> tags = getTags(c).get(tagName);
+        return tags == null ? Collections.emptyList() : tags;
+    }
+
+    /** Return the comment body of the element, or an empty string */
+    public String getComment(Element c) {
+        List<String> comments = getTag(c, "comment");
+        return comments.isEmpty() ? "" : comments.get(0);
+    }
+
+    /** Parse the tags of the element's comment into an immutable map */
+    static Map<String, List<String>> parse(DocTrees docTrees, Element c) {
+        DocCommentTree tree = docTrees.getDocCommentTree(c);
+        Map<String, List<String>> tagsByName = new HashMap<>();
+        new TagScanner(tagsByName).visitDocComment(tree, null);
+        if (tagsByName.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        for (Map.Entry<String, List<String>> entry : tagsByName.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(tagsByName);
+    }
+
+    /** Number of lookups answered from the index */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /** Number of lookups that required parsing a doc comment */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** Number of elements whose tags are indexed */
+    public int size() {
+        return tags.size();
+    }
+
+    public String toString() {
+        long h = hits.get(), m = misses.get();
+        return "Tag cache: " + size() + " elements, " + h + " hits, " + m + " misses"
+                + (h + m == 0 ? "" : String.format(" (%.1f%% hit ratio)", 100.0 * h / (h + m)));
+    }
+}
@@ -1,15 +1,11 @@
 package org.umlgraph.doclet.util;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import javax.lang.model.element.Element;
 
-import org.umlgraph.doclet.TagScanner;
-
-import com.sun.source.doctree.DocCommentTree;
 import com.sun.source.util.DocTrees;
 
 import jdk.javadoc.doclet.DocletEnvironment;
@@ -20,11 +16,13 @@ public class TagUtil {
         return getTags(root.getDocTrees(), c);
     }
     
+    /**
+     * Return the tags of the specified element, keyed by tag name. The comment
+     * is parsed on every call; the doclet reads the tags through the
+     * {@link ElementTagCache} of its run instead. The tags cannot be modified.
+     */
     public static Map<String, List<String>> getTags(DocTrees docTrees, Element c) {
-        DocCommentTree tree = docTrees.getDocCommentTree(c);
-        Map<String, List<String>> tagsByName = new HashMap<>();
-        new TagScanner(tagsByName).visitDocComment(tree, null);
-        return tagsByName;
+        return ElementTagCache.parse(docTrees, c);
     }
     
     public static String getComment(DocletEnvironment root, Element c) {
@@ -0,0 +1,164 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of the mapping of external classes to the roots of their
+ * documentation
+ */
+public class ApiDocMapTest {
+
+    private static final String JAVA = "https://docs.example.org/java/";
+    private static final String UTIL = "https://docs.example.org/util/";
+    private static final String MAPPED = "https://docs.example.org/mapped/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ApiDocMap packages() {
+	return new ApiDocMap().withPackages(List.of("java.lang", "java.util"), JAVA)
+		.withPackages(List.of("java.util.concurrent"), UTIL);
+    }
+
+    private static Map<Pattern, String> mapping(String regex, String root) {
+	Map<Pattern, String> roots = new LinkedHashMap<>();
+	roots.put(Pattern.compile(regex), root);
+	return roots;
+    }
+
+    @Test
+    public void emptyMapHasNoRoots() {
+	ApiDocMap map = new ApiDocMap();
+	Assert.assertTrue(map.isEmpty());
+	Assert.assertNull(map.getRoot("java.lang.String"));
+	Assert.assertFalse(packages().isEmpty());
+	Assert.assertFalse(map.withPatterns(mapping(".*", MAPPED)).isEmpty());
+    }
+
+    @Test
+    public void longestListedPackageWins() {
+	ApiDocMap map = packages();
+	Assert.assertEquals(JAVA, map.getRoot("java.util.List"));
+	Assert.assertEquals(UTIL, map.getRoot("java.util.concurrent.Future"));
+	Assert.assertEquals(JAVA, map.getRoot("java.lang.String"));
+    }
+
+    @Test
+    public void nameMustContinueWithAClass() {
+	ApiDocMap map = packages();
+	Assert.assertNull("package not listed", map.getRoot("java.util.function.Function"));
+	Assert.assertNull("package only", map.getRoot("java.util"));
+	Assert.assertNull("parent not listed", map.getRoot("java.Object"));
+	Assert.assertNull(map.getRoot("javax.swing.JFrame"));
+	Assert.assertNull(map.getRoot("String"));
+    }
+
+    @Test
+    public void nestedClassesHaveTheRootOfTheirPackage() {
+	ApiDocMap map = packages();
+	Assert.assertEquals(JAVA, map.getRoot("java.util.Map.Entry"));
+	Assert.assertEquals(UTIL, map.getRoot("java.util.concurrent.ConcurrentHashMap.KeySetView"));
+	Assert.assertEquals(JAVA, map.getRoot("java.lang.Character.UnicodeBlock"));
+    }
+
+    @Test
+    public void earlierPackageListKeepsItsPackages() {
+	ApiDocMap map = packages().withPackages(List.of("java.util", "java.io"), MAPPED);
+	Assert.assertEquals(JAVA, map.getRoot("java.util.List"));
+	Assert.assertEquals(MAPPED, map.getRoot("java.io.File"));
+    }
+
+    @Test
+    public void earlierPatternWinsOverLaterPackageList() {
+	ApiDocMap map = new ApiDocMap().withPatterns(mapping("java\\.util\\..*", MAPPED))
+		.withPackages(List.of("java.util", "java.lang"), JAVA);
+	Assert.assertEquals(MAPPED, map.getRoot("java.util.List"));
+	Assert.assertEquals(JAVA, map.getRoot("java.lang.String"));
+    }
+
+    @Test
+    public void earlierPackageListWinsOverLaterPattern() {
+	ApiDocMap map = packages().withPatterns(mapping("java\\..*", MAPPED));
+	Assert.assertEquals(JAVA, map.getRoot("java.util.List"));
+	Assert.assertEquals("not in a listed package", MAPPED, map.getRoot("java.util.function.Function"));
+	Assert.assertEquals(MAPPED, map.getRoot("java.Object"));
+    }
+
+    @Test
+    public void patternsAreTriedInTurn() {
+	Map<Pattern, String> roots = mapping("java\\.util\\.List", UTIL);
+	roots.put(Pattern.compile("java\\..*"), MAPPED);
+	ApiDocMap map = new ApiDocMap().withPatterns(roots).withPatterns(mapping(".*", JAVA));
+	Assert.assertEquals(UTIL, map.getRoot("java.util.List"));
+	Assert.assertEquals(MAPPED, map.getRoot("java.util.Map"));
+	Assert.assertEquals(JAVA, map.getRoot("org.example.Foo"));
+	Assert.assertNull("patterns match the whole name", new ApiDocMap().withPatterns(mapping("java", JAVA))
+		.getRoot("java.util.List"));
+    }
+
+    @Test
+    public void copiesAreIndependent() {
+	ApiDocMap map = packages();
+	Assert.assertNull(map.getRoot("java.io.File"));
+	ApiDocMap more = map.withPackages(List.of("java.io"), MAPPED);
+	Assert.assertEquals(MAPPED, more.getRoot("java.io.File"));
+	Assert.assertNull("original unchanged", map.getRoot(new StringBuilder("java.io.File")));
+    }
+
+    @Test
+    public void mappingsAreListedByName() {
+	Assert.assertEquals("{java.lang=" + JAVA + ", java.util=" + JAVA + ", java.util.concurrent=" + UTIL
+		+ ", x.*=" + MAPPED + "}", packages().withPatterns(mapping("x.*", MAPPED)).toString());
+    }
+
+    @Test
+    public void optionsAreAppliedInTheirOrder() throws IOException {
+	Path docs = folder.getRoot().toPath();
+	Files.write(docs.resolve("package-list"), "java.util\njava.lang\n".getBytes(StandardCharsets.UTF_8));
+	Path mapping = docs.resolve("apidocmap.properties");
+	Files.write(mapping, "java\\\\.util\\\\..*=https://docs.example.org/mapped\n".getBytes(StandardCharsets.UTF_8));
+	String[] link = { "-linkoffline", JAVA, docs.toUri().toString() };
+	String[] map = { "-apidocmap", mapping.toString() };
+
+	Options linkFirst = new Options();
+	linkFirst.setOption(link);
+	linkFirst.setOption(map);
+	Assert.assertEquals(JAVA, linkFirst.apiDocMap.getRoot("java.util.List"));
+
+	Options mapFirst = new Options();
+	mapFirst.setOption(map);
+	mapFirst.setOption(link);
+	Assert.assertEquals(MAPPED, mapFirst.apiDocMap.getRoot("java.util.List"));
+	Assert.assertEquals(JAVA, mapFirst.apiDocMap.getRoot("java.lang.String"));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of the writer of dot files, checking its output against that of
+ * an {@link OutputStreamWriter}
+ */
+public class DotWriterTest {
+
+    /** The size of the writer's character buffer */
+    private static final int BUFFER_SIZE = 8192;
+    /** A character outside the basic multilingual plane, written as a surrogate pair */
+    private static final String PAIR = new String(Character.toChars(0x1F600));
+
+    private static byte[] expected(String text, String charset) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	try (Writer w = new OutputStreamWriter(bytes, charset)) {
+	    w.write(text);
+	}
+	return bytes.toByteArray();
+    }
+
+    private static String padding(int length) {
+	StringBuilder sb = new StringBuilder();
+	for (int i = 0; i < length; i++) {
+	    sb.append((char) ('a' + i % 26));
+	}
+	return sb.toString();
+    }
+
+    /** Write the text as a string, as a sequence, and a character at a time */
+    private static void assertWritten(String text, String charset) throws IOException {
+	for (int mode = 0; mode < 3; mode++) {
+	    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	    DotWriter w = new DotWriter(bytes, charset);
+	    if (mode == 0) {
+		w.print(text);
+	    } else if (mode == 1) {
+		w.print(new StringBuilder(text));
+	    } else {
+		for (int i = 0; i < text.length(); i++) {
+		    w.print(text.charAt(i));
+		}
+	    }
+	    w.close();
+	    Assert.assertFalse(w.checkError());
+	    Assert.assertArrayEquals(charset + " mode " + mode + " length " + text.length(), expected(text, charset),
+		    bytes.toByteArray());
+	}
+    }
+
+    @Test
+    public void textAroundTheBufferBoundaryIsWritten() throws IOException {
+	for (int length : new int[] { 0, 1, BUFFER_SIZE - 1, BUFFER_SIZE, BUFFER_SIZE + 1, 2 * BUFFER_SIZE,
+		3 * BUFFER_SIZE + 7 }) {
+	    assertWritten(padding(length), "UTF-8");
+	    assertWritten(padding(length) + "\u00e9\u03b1\u20ac", "UTF-8");
+	}
+    }
+
+    @Test
+    public void surrogatePairAcrossTheBufferBoundaryIsWritten() throws IOException {
+	for (int before = BUFFER_SIZE - 3; before <= BUFFER_SIZE + 1; before++) {
+	    assertWritten(padding(before) + PAIR + "z", "UTF-8");
+	    assertWritten(padding(before) + PAIR + PAIR, "UTF-16BE");
+	}
+	StringBuilder pairs = new StringBuilder();
+	for (int i = 0; i < BUFFER_SIZE; i++) {
+	    pairs.append(PAIR);
+	}
+	assertWritten(pairs.toString(), "UTF-8");
+    }
+
+    @Test
+    public void surrogatePairSplitByAFlushIsWritten() throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DotWriter w = new DotWriter(bytes, "UTF-8");
+	w.print("a").print(PAIR.charAt(0));
+	w.flush();
+	Assert.assertArrayEquals("the high surrogate is kept", expected("a", "UTF-8"), bytes.toByteArray());
+	w.print(PAIR.charAt(1)).print("b");
+	w.close();
+	Assert.assertArrayEquals(expected("a" + PAIR + "b", "UTF-8"), bytes.toByteArray());
+    }
+
+    @Test
+    public void unmappableAndUnpairedCharactersAreReplaced() throws IOException {
+	assertWritten("caf\u00e9 \u03b1\u20ac", "US-ASCII");
+	assertWritten("\u03b1\u20ac", "ISO-8859-1");
+	assertWritten("a" + PAIR.charAt(1) + "b", "UTF-8");
+	assertWritten("a" + PAIR.charAt(0), "UTF-8");
+	assertWritten(padding(BUFFER_SIZE - 1) + PAIR.charAt(0) + "b", "UTF-8");
+    }
+
+    @Test
+    public void numbersAreFormattedAsByFmt() throws IOException {
+	double[] values = { 0, -0.0, 1, -1, 10, 0.25, -0.5, 1.5e-7, 12345678.0, 1e15, 1e18, -1e18, 123.456,
+		Long.MAX_VALUE, Long.MIN_VALUE, (double) Long.MAX_VALUE * 2, 1e300, -1e300, Double.MIN_VALUE,
+		Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 9007199254740993.0 };
+	StringBuilder expected = new StringBuilder();
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DotWriter w = new DotWriter(bytes, "UTF-8");
+	for (double value : values) {
+	    expected.append(StringUtil.fmt(value)).append(' ');
+	    w.print(value).print(' ');
+	}
+	w.close();
+	Assert.assertEquals(expected.toString(), new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void linesAndNullsAreWritten() throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	DotWriter w = new DotWriter(bytes, "UTF-8");
+	w.print("a").println().print((CharSequence) null).println();
+	w.close();
+	Assert.assertEquals("a" + System.lineSeparator() + "null" + System.lineSeparator(),
+		new String(bytes.toByteArray(), "UTF-8"));
+    }
+
+    @Test
+    public void errorsAreReportedByCheckError() {
+	DotWriter w;
+	try {
+	    w = new DotWriter(new OutputStream() {
+		@Override
+		public void write(int b) throws IOException {
+		    throw new IOException("full");
+		}
+	    }, "UTF-8");
+	} catch (UnsupportedEncodingException e) {
+	    throw new AssertionError(e);
+	}
+	w.print("a");
+	Assert.assertFalse("nothing written yet", w.checkError());
+	w.close();
+	Assert.assertTrue(w.checkError());
+    }
+
+    @Test
+    public void unknownCharsetIsUnsupported() {
+	for (String charset : new String[] { "no-such-charset", "bad name!" }) {
+	    try {
+		new DotWriter(new ByteArrayOutputStream(), charset);
+		Assert.fail(charset);
+	    } catch (UnsupportedEncodingException e) {
+		Assert.assertEquals(charset, e.getMessage());
+	    }
+	}
+    }
+}
@@ -0,0 +1,272 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.source.util.DocTreePath;
+
+import jdk.javadoc.doclet.Reporter;
+
+/**
+ * Unit tests of the execution of Graphviz, through a shell script standing in
+ * for dot
+ */
+public class GraphvizExecutorTest {
+
+    /**
+     * A stand-in for dot, laying out each file into an svg holding its source
+     * and the way it was invoked. The words of a dot file make it take a
+     * second, hang, fail, or print messages naming the file or not.
+     */
+    private static final String DOT = "#!/bin/sh\n"
+	    + "if [ \"$2\" = -O ]; then mode=batch; shift 2; else mode=single; out=\"$3\"; shift 3; fi\n"
+	    + "status=0\n"
+	    + "for f; do\n"
+	    + "  if [ $mode = batch ]; then o=\"$f.svg\"; else o=\"$out\"; fi\n"
+	    + "  grep -q hang \"$f\" && exec sleep 60\n"
+	    + "  grep -q slow \"$f\" && touch \"$f.started\" && sleep 1\n"
+	    + "  grep -q warning \"$f\" && echo \"Warning: $f: unknown attribute\" >&2\n"
+	    + "  grep -q note \"$f\" && echo \"Note: a message naming no file\" >&2\n"
+	    + "  if grep -q error \"$f\"; then echo \"Error: $f: syntax error in line 1\" >&2; status=1; continue; fi\n"
+	    + "  { echo \"<svg $mode>\"; cat \"$f\"; echo \"</svg>\"; } > \"$o\"\n"
+	    + "done\n"
+	    + "exit $status\n";
+
+    /** A reporter keeping the messages it is given */
+    private static class Messages implements Reporter {
+	final List<String> lines = new ArrayList<>();
+
+	@Override
+	public void print(Diagnostic.Kind kind, String msg) {
+	    lines.add(kind + ": " + msg);
+	}
+
+	@Override
+	public void print(Diagnostic.Kind kind, DocTreePath path, String msg) {
+	    print(kind, msg);
+	}
+
+	@Override
+	public void print(Diagnostic.Kind kind, Element e, String msg) {
+	    print(kind, msg);
+	}
+
+	/** Return the number of messages starting with the specified text */
+	int count(String start) {
+	    int count = 0;
+	    for (String line : lines)
+		if (line.startsWith(start))
+		    count++;
+	    return count;
+	}
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String dot;
+
+    @Before
+    public void writeDot() throws IOException {
+	Assume.assumeTrue("needs a shell", new File("/bin/sh").canExecute());
+	File script = folder.newFile("dot");
+	Files.write(script.toPath(), DOT.getBytes(StandardCharsets.UTF_8));
+	Assert.assertTrue(script.setExecutable(true));
+	dot = script.getPath();
+    }
+
+    /** Write a dot file holding the specified words */
+    private File dotFile(String name, String words) throws IOException {
+	File file = new File(folder.getRoot(), name + ".dot");
+	Files.write(file.toPath(), ("digraph G { " + words + " }\n").getBytes(StandardCharsets.UTF_8));
+	return file;
+    }
+
+    private File svgFile(String name) {
+	return new File(folder.getRoot(), name + ".svg");
+    }
+
+    private static String read(File file) throws IOException {
+	return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lay out diagrams B, C, ... holding the specified words with a single
+     * runner. They are queued, along with the end marker, while dot takes a
+     * second on diagram A, so that they are passed to dot as a batch.
+     */
+    private List<File> layOutBehindASlowDiagram(GraphvizExecutor graphviz, Messages messages, String... words)
+	    throws IOException, InterruptedException {
+	File started = new File(folder.getRoot(), "A.dot.started");
+	graphviz.submit(dotFile("A", "slow"), svgFile("A"));
+	for (int i = 0; i < 100 && !started.exists(); i++)
+	    Thread.sleep(100);
+	for (int i = 0; i < words.length; i++) {
+	    String name = String.valueOf((char) ('B' + i));
+	    graphviz.submit(dotFile(name, words[i]), svgFile(name));
+	}
+	return graphviz.finish(messages);
+    }
+
+    @Test
+    public void queuedDiagramsAreLaidOutInABatch() throws Exception {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 0, null);
+	List<File> failed = layOutBehindASlowDiagram(graphviz, messages, "B", "C");
+	Assert.assertTrue(failed.toString(), failed.isEmpty());
+	Assert.assertTrue(read(svgFile("A")), read(svgFile("A")).startsWith("<svg single>"));
+	// the diagrams drained along with the end marker are laid out
+	Assert.assertTrue(read(svgFile("B")), read(svgFile("B")).startsWith("<svg batch>"));
+	Assert.assertTrue(read(svgFile("C")), read(svgFile("C")).startsWith("<svg batch>"));
+	Assert.assertFalse("batch outputs moved", new File(folder.getRoot(), "B.dot.svg").exists());
+	File b = new File(folder.getRoot(), "B.dot");
+	Assert.assertEquals(messages.lines.toString(), 1,
+		messages.count("NOTE: Graphviz laid out " + b + " in a batch of 2 diagrams in "));
+	Assert.assertEquals(1, messages.count("NOTE: Graphviz laid out 3 diagrams with 2 dot processes"));
+    }
+
+    @Test
+    public void batchHasTheTimeOfAllItsDiagrams() throws Exception {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 2000, null);
+	List<File> failed = layOutBehindASlowDiagram(graphviz, messages, "slow", "slow", "slow");
+	Assert.assertTrue(failed.toString(), failed.isEmpty());
+	for (String name : List.of("B", "C", "D"))
+	    Assert.assertTrue(name, read(svgFile(name)).startsWith("<svg batch>"));
+    }
+
+    @Test
+    public void completedOutputsOfAFailedBatchAreKept() throws Exception {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 0, null);
+	List<File> failed = layOutBehindASlowDiagram(graphviz, messages, "B", "C", "error", "E");
+	Assert.assertEquals(List.of(svgFile("D")), failed);
+	// the output of C may be incomplete, as dot did not go on to D
+	Assert.assertTrue(read(svgFile("B")).startsWith("<svg batch>"));
+	for (String name : List.of("C", "E"))
+	    Assert.assertTrue(name, read(svgFile(name)).startsWith("<svg single>"));
+	Assert.assertFalse(svgFile("D").exists());
+	File d = new File(folder.getRoot(), "D.dot");
+	Assert.assertEquals(messages.lines.toString(), 1, messages.count("WARNING: Error: " + d));
+	Assert.assertEquals(1, messages.count("WARNING: Errors running Graphviz on " + d));
+	Assert.assertEquals(0, messages.count("WARNING: Graphviz messages for the batch"));
+	Assert.assertEquals("failed diagram not counted", 1,
+		messages.count("NOTE: Graphviz laid out 4 diagrams with 5 dot processes"));
+    }
+
+    @Test
+    public void diagramsOfAKilledBatchAreRetriedInTurn() throws Exception {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 2000, null);
+	List<File> failed = layOutBehindASlowDiagram(graphviz, messages, "B", "hang");
+	Assert.assertEquals(List.of(svgFile("C")), failed);
+	Assert.assertTrue(read(svgFile("B")).startsWith("<svg single>"));
+	Assert.assertEquals(messages.lines.toString(), 1, messages.count("WARNING: Graphviz did not finish within 2 s"));
+	for (String name : List.of("B", "C"))
+	    Assert.assertFalse("batch outputs removed", new File(folder.getRoot(), name + ".dot.svg").exists());
+    }
+
+    @Test
+    public void messagesAreAttributedToTheFilesTheyName() throws Exception {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 0, null);
+	List<File> failed = layOutBehindASlowDiagram(graphviz, messages, "warning", "note");
+	Assert.assertTrue(failed.toString(), failed.isEmpty());
+	File b = new File(folder.getRoot(), "B.dot");
+	File c = new File(folder.getRoot(), "C.dot");
+	int warning = messages.lines.indexOf("WARNING: Warning: " + b + ": unknown attribute");
+	Assert.assertTrue(messages.lines.toString(), warning >= 0);
+	Assert.assertTrue("reported with its diagram",
+		messages.lines.get(warning + 1).startsWith("NOTE: Graphviz laid out " + b + " "));
+	int batch = messages.lines.indexOf("WARNING: Graphviz messages for the batch of " + b + ", " + c + ":");
+	Assert.assertTrue(messages.lines.toString(), batch > warning);
+	Assert.assertEquals("WARNING: Note: a message naming no file", messages.lines.get(batch + 1));
+    }
+
+    @Test
+    public void hungProcessIsKilled() throws IOException {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 10, 1000, null);
+	long start = System.currentTimeMillis();
+	graphviz.submit(dotFile("A", "hang"), svgFile("A"));
+	List<File> failed = graphviz.finish(messages);
+	Assert.assertTrue("killed", System.currentTimeMillis() - start < 30000);
+	Assert.assertEquals(List.of(svgFile("A")), failed);
+	Assert.assertEquals(messages.lines.toString(), 1, messages.count("WARNING: Graphviz did not finish within 1 s"));
+	Assert.assertEquals(1, messages.count("WARNING: Errors running Graphviz on " + new File(folder.getRoot(), "A.dot")));
+	Assert.assertEquals(0, messages.count("NOTE: Graphviz laid out"));
+    }
+
+    @Test
+    public void cacheEntrySurvivesALayoutWithoutTheCache() throws IOException {
+	SvgCache cache = new SvgCache(new File(folder.getRoot(), "cache"), 1 << 20, "dot", "svg");
+	File dotFile = dotFile("A", "A");
+	String key = cache.key(dotFile);
+	GraphvizExecutor graphviz = new GraphvizExecutor(dot, 1, 1, 0, cache);
+	graphviz.submit(dotFile, svgFile("A"));
+	graphviz.finish(new Messages());
+	String laidOut = read(svgFile("A"));
+
+	// the image of the next run is linked to the cache entry
+	graphviz = new GraphvizExecutor(dot, 1, 1, 0, cache);
+	graphviz.submit(dotFile, svgFile("A"));
+	graphviz.finish(new Messages());
+	// a run without the cache lays out a changed graph into the same image
+	dotFile("A", "B");
+	graphviz = new GraphvizExecutor(dot, 1, 1, 0, null);
+	graphviz.submit(dotFile, svgFile("A"));
+	Assert.assertTrue(graphviz.finish(new Messages()).isEmpty());
+	Assert.assertTrue(read(svgFile("A")), read(svgFile("A")).contains("{ B }"));
+
+	File again = svgFile("again");
+	Assert.assertTrue(cache.fetch(key, again));
+	Assert.assertEquals("cache entry left intact", laidOut, read(again));
+    }
+
+    @Test
+    public void missingDotIsReportedOnce() throws IOException {
+	Messages messages = new Messages();
+	GraphvizExecutor graphviz = new GraphvizExecutor(new File(folder.getRoot(), "missing").getPath(), 2, 10, 0,
+		null);
+	List<File> svgs = new ArrayList<>();
+	for (String name : List.of("A", "B", "C")) {
+	    graphviz.submit(dotFile(name, name), svgFile(name));
+	    svgs.add(svgFile(name));
+	}
+	Assert.assertEquals(svgs, graphviz.finish(messages));
+	Assert.assertEquals(messages.lines.toString(), 1, messages.lines.size());
+	Assert.assertTrue(messages.lines.get(0), messages.lines.get(0).startsWith("WARNING: Cannot run Graphviz "));
+    }
+}
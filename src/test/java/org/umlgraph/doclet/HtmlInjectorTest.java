@@ -0,0 +1,110 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of the insertion of text in HTML files
+ */
+public class HtmlInjectorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File write(String content) throws IOException {
+	Path file = folder.getRoot().toPath().resolve("A.html");
+	Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	return file.toFile();
+    }
+
+    private static String read(File file) throws IOException {
+	return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static boolean insert(File file, String line, String text) throws IOException {
+	return HtmlInjector.insertAfter(file, StandardCharsets.UTF_8, line::equals, text);
+    }
+
+    @Test
+    public void textIsInsertedAfterTheFirstMatchingLine() throws IOException {
+	File html = write("<html>\n<hr>\n<p>\n<hr>\n</html>\n");
+	Assert.assertTrue(insert(html, "<hr>", "<img>\n"));
+	Assert.assertEquals("<html>\n<hr>\n<img>\n<p>\n<hr>\n</html>\n", read(html));
+	Assert.assertFalse("temporary file removed", new File(html.getPath() + ".uml").exists());
+    }
+
+    @Test
+    public void carriageReturnIsNotPartOfTheLine() throws IOException {
+	File html = write("<html>\r\n<hr>\r\n</html>\r\n");
+	Assert.assertTrue(insert(html, "<hr>", "<img>\r\n"));
+	Assert.assertEquals("<html>\r\n<hr>\r\n<img>\r\n</html>\r\n", read(html));
+    }
+
+    @Test
+    public void lastLineWithoutNewlineIsEnded() throws IOException {
+	File html = write("<html>\n<hr>");
+	Assert.assertTrue(insert(html, "<hr>", "<img>\n"));
+	Assert.assertEquals("<html>\n<hr>" + System.lineSeparator() + "<img>\n", read(html));
+    }
+
+    @Test
+    public void lastLineWithoutNewlineKeepsItsCarriageReturn() throws IOException {
+	File html = write("<html>\r\n<hr>\r");
+	Assert.assertTrue(insert(html, "<hr>", "<img>"));
+	Assert.assertEquals("<html>\r\n<hr>\r" + System.lineSeparator() + "<img>", read(html));
+    }
+
+    @Test
+    public void fileWithoutAMatchIsLeftAlone() throws IOException {
+	File html = write("<html>\n<p>\n</html>");
+	Assert.assertFalse(insert(html, "<hr>", "<img>\n"));
+	Assert.assertEquals("<html>\n<p>\n</html>", read(html));
+	Assert.assertFalse(new File(html.getPath() + ".uml").exists());
+	Assert.assertFalse("empty file", insert(write(""), "<hr>", "<img>\n"));
+    }
+
+    @Test
+    public void linesSpanningTheBufferAreMatched() throws IOException {
+	// lines longer than the buffer, and lines split across its end
+	StringBuilder sb = new StringBuilder();
+	sb.append(String.format("%200000s", "")).append('\n');
+	for (int i = 0; i < 20000; i++) {
+	    sb.append("<p>\u00e9").append(i).append("</p>\n");
+	}
+	String prefix = sb.toString();
+	String suffix = String.format("%100000s", "") + "\n</html>\n";
+	File html = write(prefix + "<hr>\n" + suffix);
+	Assert.assertTrue(insert(html, "<hr>", "<img>\n"));
+	Assert.assertEquals(prefix + "<hr>\n<img>\n" + suffix, read(html));
+
+	html = write(prefix + "<p>\u00e919999x</p>\n");
+	Assert.assertTrue(insert(html, "<p>\u00e912345</p>", "<img>\n"));
+	Assert.assertTrue(read(html).contains("<p>\u00e912345</p>\n<img>\n<p>\u00e912346</p>\n"));
+    }
+}
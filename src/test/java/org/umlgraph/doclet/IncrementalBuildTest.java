@@ -0,0 +1,193 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.lang.model.element.TypeElement;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.umlgraph.doclet.util.ElementUtil;
+
+/**
+ * Unit tests of the decisions of an incremental build, over the manifests of
+ * consecutive runs
+ */
+public class IncrementalBuildTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File sources;
+    private File output;
+
+    @Before
+    public void writeSources() throws IOException {
+	sources = folder.newFolder("src");
+	output = folder.newFolder("out");
+	// A is a subclass of B; C is unrelated to both
+	write("p/A.java", "package p; public class A extends B { }");
+	write("p/B.java", "package p; public class B { }");
+	write("q/C.java", "package q; public class C { }");
+    }
+
+    private void write(String name, String content) throws IOException {
+	Path file = sources.toPath().resolve(name);
+	Files.createDirectories(file.getParent());
+	Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The image of the diagram of a class or package, created if asked */
+    private File image(String name, boolean create) throws IOException {
+	File svg = new File(output, name + ".svg");
+	if (create && !svg.exists())
+	    Files.write(svg.toPath(), new byte[0]);
+	return svg;
+    }
+
+    /**
+     * Run an incremental build over the sources, returning whether each
+     * context and package diagram is stale; the images of the diagrams are
+     * created, and the manifest saved with the failed images specified
+     */
+    private Map<String, Boolean> build(String... failed) throws Exception {
+	Map<String, Boolean> stale = new TreeMap<>();
+	TestDoclet.run(sources, (root, opt) -> {
+	    IncrementalBuild incremental = new IncrementalBuild(root, opt, output.getPath());
+	    for (TypeElement cd : opt.run.getModel().getClasses()) {
+		String name = cd.getSimpleName().toString();
+		stale.put(name, incremental.isContextStale(cd, image(name, false)));
+		String packageName = ElementUtil.getPackageOf(root, cd).getQualifiedName().toString();
+		if (!stale.containsKey(packageName))
+		    stale.put(packageName, incremental.isPackageStale(ElementUtil.getPackageOf(root, cd),
+			    image(packageName, false)));
+	    }
+	    for (String name : stale.keySet())
+		image(name, true);
+	    List<File> failedImages = new ArrayList<>();
+	    for (String name : failed)
+		failedImages.add(image(name, false));
+	    incremental.save(failedImages);
+	});
+	return stale;
+    }
+
+    private String manifest() throws IOException {
+	return new String(Files.readAllBytes(new File(output, IncrementalBuild.MANIFEST).toPath()),
+		StandardCharsets.UTF_8);
+    }
+
+    private static void assertStale(Map<String, Boolean> stale, String... names) {
+	List<String> expected = List.of(names);
+	for (Map.Entry<String, Boolean> e : stale.entrySet())
+	    Assert.assertEquals(e.getKey(), expected.contains(e.getKey()), e.getValue());
+    }
+
+    @Test
+    public void firstRunRebuildsEverything() throws Exception {
+	assertStale(build(), "A", "B", "C", "p", "q");
+    }
+
+    @Test
+    public void unchangedRunRebuildsNothing() throws Exception {
+	build();
+	String first = manifest();
+	assertStale(build());
+	Assert.assertEquals("manifest round trip", first, manifest());
+    }
+
+    @Test
+    public void manifestRecordsFingerprintsAndNeighbours() throws Exception {
+	build();
+	String[] lines = manifest().split("\n");
+	Assert.assertTrue(lines[0], lines[0].startsWith("options\t"));
+	Assert.assertEquals(4, lines.length);
+	Assert.assertTrue(lines[1], lines[1].startsWith("p.A\tp\t"));
+	Assert.assertTrue(lines[1], lines[1].endsWith("\tp.B"));
+	Assert.assertTrue(lines[2], lines[2].startsWith("p.B\tp\t"));
+	Assert.assertTrue(lines[2], lines[2].endsWith("\tp.A"));
+	Assert.assertEquals(3, lines[3].split("\t").length);
+    }
+
+    @Test
+    public void changedClassRebuildsItsNeighboursAndPackage() throws Exception {
+	build();
+	write("p/B.java", "package p; public class B { int count; }");
+	assertStale(build(), "A", "B", "p");
+    }
+
+    @Test
+    public void changeOfAFormerNeighbourRebuildsTheDiagram() throws Exception {
+	build();
+	// the previous diagram of B showed its subclass A
+	write("p/A.java", "package p; public class A { }");
+	assertStale(build(), "A", "B", "p");
+	assertStale(build());
+    }
+
+    @Test
+    public void missingImageIsRebuilt() throws Exception {
+	build();
+	Assert.assertTrue(image("C", false).delete());
+	assertStale(build(), "C");
+    }
+
+    @Test
+    public void changedOptionsRebuildEverything() throws Exception {
+	build();
+	Files.write(new File(output, IncrementalBuild.MANIFEST).toPath(),
+		manifest().replaceFirst("options\t[0-9a-f]*", "options\t0").getBytes(StandardCharsets.UTF_8));
+	assertStale(build(), "A", "B", "C", "p", "q");
+    }
+
+    @Test
+    public void failedLayoutIsRebuiltByTheNextRun() throws Exception {
+	build("C");
+	Assert.assertFalse("failed class left out of the manifest", manifest().contains("q.C\t"));
+	assertStale(build(), "C", "q");
+	assertStale(build());
+    }
+
+    @Test
+    public void failedPackageLayoutIsRebuiltByTheNextRun() throws Exception {
+	build("p");
+	assertStale(build(), "A", "B", "p");
+	assertStale(build());
+    }
+
+    @Test
+    public void includedClassIsANeighbourOfEveryClass() throws Exception {
+	write("q/C.java", "package q; /** @opt include q.C */ public class C { }");
+	build();
+	Assert.assertTrue(manifest(), manifest().contains("\tp.B\tq.C\n"));
+	write("q/C.java", "package q; /** @opt include q.C */ public class C { int count; }");
+	assertStale(build(), "A", "B", "C", "q");
+    }
+}
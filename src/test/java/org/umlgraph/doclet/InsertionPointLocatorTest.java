@@ -0,0 +1,87 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of the recognition of the title headings of javadoc pages, as
+ * written by different JDK versions
+ */
+public class InsertionPointLocatorTest {
+
+    @Test
+    public void classHeadingOfJdk11() {
+	InsertionPointLocator invoice = InsertionPointLocator.forClass("Invoice");
+	Assert.assertTrue(invoice.test("<h2 title=\"Class Invoice\" class=\"title\">Class Invoice</h2>"));
+	Assert.assertTrue(invoice.test("<h2 title=\"Interface Invoice\" class=\"title\">Interface Invoice</h2>"));
+	Assert.assertTrue(invoice.test("<h2 title=\"Enum Invoice\" class=\"title\">Enum Invoice</h2>"));
+	Assert.assertTrue(invoice.test("<h2 title=\"Annotation Type Invoice\" class=\"title\">Annotation Type Invoice</h2>"));
+    }
+
+    @Test
+    public void classHeadingOfJdk17() {
+	InsertionPointLocator invoice = InsertionPointLocator.forClass("Invoice");
+	Assert.assertTrue(invoice.test("<h1 title=\"Class Invoice\" class=\"title\">Class Invoice</h1>"));
+	Assert.assertTrue(invoice.test("<h1 title=\"Enum Class Invoice\" class=\"title\">Enum Class Invoice</h1>"));
+	Assert.assertTrue(invoice.test("<h1 title=\"Record Class Invoice\" class=\"title\">Record Class Invoice</h1>"));
+	Assert.assertTrue(invoice.test("<h1 title=\"Annotation Interface Invoice\" class=\"title\">Annotation Interface Invoice</h1>"));
+	Assert.assertTrue("upper case tag", invoice.test("<H1 title=\"Class Invoice\" class=\"title\">Class Invoice</H1>"));
+    }
+
+    @Test
+    public void headingOfAnotherClassIsSkipped() {
+	InsertionPointLocator invoice = InsertionPointLocator.forClass("Invoice");
+	Assert.assertFalse(invoice.test("<h1 title=\"Class InvoiceItem\" class=\"title\">Class InvoiceItem</h1>"));
+	Assert.assertFalse(invoice.test("<h1 title=\"Class BadInvoice\" class=\"title\">Class BadInvoice</h1>"));
+	Assert.assertFalse(invoice.test("<h1 title=\"Invoice\" class=\"title\">Invoice</h1>"));
+	Assert.assertFalse("unknown kind", invoice.test("<h1 title=\"Module Invoice\" class=\"title\">Module Invoice</h1>"));
+	Assert.assertFalse("not a heading", invoice.test("<a href=\"Invoice.html\" title=\"Class Invoice\">Invoice</a>"));
+	Assert.assertFalse("package heading", invoice.test("<h1 title=\"Package Invoice\" class=\"title\">Package Invoice</h1>"));
+    }
+
+    @Test
+    public void linkBeforeTheHeadingIsSkipped() {
+	Assert.assertTrue(InsertionPointLocator.forClass("Invoice").test(
+		"<a title=\"Class Customer\" href=\"Customer.html\">Customer</a><h1 title=\"Class Invoice\" class=\"title\">"));
+    }
+
+    @Test
+    public void packageHeadingOfJdk11() {
+	Assert.assertTrue(InsertionPointLocator.PACKAGE.test(
+		"<h1 title=\"Package\" class=\"title\">Package&nbsp;gr.spinellis.invoice</h1>"));
+    }
+
+    @Test
+    public void packageHeadingOfJdk17() {
+	Assert.assertTrue(InsertionPointLocator.PACKAGE.test(
+		"<h1 title=\"Package gr.spinellis.invoice\" class=\"title\">Package gr.spinellis.invoice</h1>"));
+	Assert.assertFalse(InsertionPointLocator.PACKAGE.test(
+		"<h1 class=\"title\">Hierarchy For Package gr.spinellis.invoice</h1>"));
+	Assert.assertFalse(InsertionPointLocator.PACKAGE.test(
+		"<h1 title=\"Class Package\" class=\"title\">Class Package</h1>"));
+    }
+
+    @Test
+    public void packageHeadingClosedOnItsOwnLine() {
+	Assert.assertTrue(InsertionPointLocator.PACKAGE.test("</H2>"));
+	Assert.assertFalse(InsertionPointLocator.forClass("Invoice").test("</h2>"));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests of the cache of the package lists of linked documentation
+ */
+public class LinkCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File cache;
+    private Path docs;
+    private String docsUrl;
+
+    @Before
+    public void createDocs() throws IOException {
+	cache = new File(folder.getRoot(), "cache");
+	docs = folder.newFolder("docs").toPath();
+	docsUrl = docs.toUri().toString();
+    }
+
+    private void writeList(String name, String content, long modified) throws IOException {
+	Path list = docs.resolve(name);
+	Files.write(list, content.getBytes(StandardCharsets.UTF_8));
+	Files.setLastModifiedTime(list, FileTime.fromMillis(modified));
+    }
+
+    /** Return the entry files of the cache */
+    private File[] entries() {
+	File[] entries = cache.listFiles();
+	return entries == null ? new File[0] : entries;
+    }
+
+    @Test
+    public void listIsReadOncePerRun() throws IOException {
+	writeList("package-list", "java.lang\njava.util\n", 1000000);
+	LinkCache links = new LinkCache(null, false);
+	List<String> packages = links.getPackages(docsUrl);
+	Assert.assertEquals(List.of("java.lang", "java.util"), packages);
+	Files.delete(docs.resolve("package-list"));
+	Assert.assertSame(packages, links.getPackages(docsUrl));
+    }
+
+    @Test
+    public void elementListIsReadWithoutModules() throws IOException {
+	writeList("element-list", "module:java.base\njava.lang\n\njava.util\n", 1000000);
+	Assert.assertEquals(List.of("java.lang", "java.util"), new LinkCache(null, false).getPackages(docsUrl));
+	Assert.assertNull("no list", new LinkCache(null, false).getPackages(folder.getRoot().toURI().toString()));
+    }
+
+    @Test
+    public void keptListIsUsedByTheNextRun() throws IOException {
+	writeList("package-list", "java.lang\n", 1000000);
+	Assert.assertEquals(List.of("java.lang"), new LinkCache(cache, false).getPackages(docsUrl));
+	Assert.assertEquals(1, entries().length);
+
+	// unchanged modification time: the kept list is used
+	writeList("package-list", "java.io\n", 1000000);
+	Assert.assertEquals(List.of("java.lang"), new LinkCache(cache, false).getPackages(docsUrl));
+	// changed modification time: the list is read again
+	writeList("package-list", "java.io\n", 2000000);
+	Assert.assertEquals(List.of("java.io"), new LinkCache(cache, false).getPackages(docsUrl));
+	Assert.assertEquals(List.of("java.io"), new LinkCache(cache, true).getPackages(docsUrl));
+    }
+
+    @Test
+    public void keptListIsUsedWhenTheListCannotBeRead() throws IOException {
+	writeList("package-list", "java.lang\n", 1000000);
+	new LinkCache(cache, false).getPackages(docsUrl);
+	Files.delete(docs.resolve("package-list"));
+	Assert.assertEquals(List.of("java.lang"), new LinkCache(cache, false).getPackages(docsUrl));
+    }
+
+    @Test
+    public void offlineRunReadsOnlyKeptLists() throws IOException {
+	writeList("package-list", "java.lang\n", 1000000);
+	Assert.assertNull("offline miss", new LinkCache(cache, true).getPackages(docsUrl));
+	Assert.assertNull("offline without a cache", new LinkCache(null, true).getPackages(docsUrl));
+	Assert.assertEquals(0, entries().length);
+	new LinkCache(cache, false).getPackages(docsUrl);
+	writeList("package-list", "java.io\n", 2000000);
+	Assert.assertEquals("offline hit", List.of("java.lang"), new LinkCache(cache, true).getPackages(docsUrl));
+    }
+
+    @Test
+    public void damagedEntryIsIgnored() throws IOException {
+	writeList("package-list", "java.lang\njava.util\n", 1000000);
+	new LinkCache(cache, false).getPackages(docsUrl);
+	File entry = entries()[0];
+	byte[] bytes = Files.readAllBytes(entry.toPath());
+
+	// truncated within the package names
+	Files.write(entry.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+	Assert.assertNull(new LinkCache(cache, true).getPackages(docsUrl));
+	Assert.assertEquals("read again", List.of("java.lang", "java.util"), new LinkCache(cache, false).getPackages(docsUrl));
+	Assert.assertArrayEquals("entry rewritten", bytes, Files.readAllBytes(entry.toPath()));
+
+	// not an entry
+	Files.write(entry.toPath(), "java.lang\n".getBytes(StandardCharsets.UTF_8));
+	Assert.assertNull(new LinkCache(cache, true).getPackages(docsUrl));
+	Files.write(entry.toPath(), new byte[0]);
+	Assert.assertNull(new LinkCache(cache, true).getPackages(docsUrl));
+	Assert.assertEquals(List.of("java.lang", "java.util"), new LinkCache(cache, false).getPackages(docsUrl));
+	try (Stream<Path> files = Files.list(cache.toPath())) {
+	    Assert.assertEquals("no temporary files left", 1, files.count());
+	}
+    }
+
+    @Test
+    public void unmodifiedListIsRevalidated() throws IOException {
+	AtomicInteger fetched = new AtomicInteger();
+	AtomicInteger notModified = new AtomicInteger();
+	HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+	server.createContext("/api/package-list", exchange -> {
+	    if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+		notModified.incrementAndGet();
+		exchange.sendResponseHeaders(304, -1);
+	    } else {
+		fetched.incrementAndGet();
+		byte[] body = "java.lang\njava.util\n".getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("ETag", "\"v1\"");
+		exchange.sendResponseHeaders(200, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+		    os.write(body);
+		}
+	    }
+	    exchange.close();
+	});
+	server.start();
+	try {
+	    String url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/api/";
+	    Assert.assertEquals(List.of("java.lang", "java.util"), new LinkCache(cache, false).getPackages(url));
+	    Assert.assertEquals(List.of("java.lang", "java.util"), new LinkCache(cache, false).getPackages(url));
+	    Assert.assertEquals(1, fetched.get());
+	    Assert.assertEquals(1, notModified.get());
+	    Assert.assertEquals("without a cache", List.of("java.lang", "java.util"), new LinkCache(null, false).getPackages(url));
+	    Assert.assertEquals(2, fetched.get());
+	} finally {
+	    server.stop(0);
+	}
+    }
+}
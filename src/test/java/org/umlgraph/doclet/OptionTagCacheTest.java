@@ -0,0 +1,156 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+import jdk.javadoc.doclet.DocletEnvironment;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of the compiled options and of the cache of the compiled
+ * <code>@opt</code> tags
+ */
+public class OptionTagCacheTest {
+
+    /** Options as given on the command line or in tags */
+    private static final String[][] OPTIONS = { { "-attributes" }, { "-!qualify" }, { "--operations" },
+	    { "nodefontcolor", "dark blue" }, { "-hide", "p\\..*" }, { "-hide" }, { "-!hide" }, { "-all" },
+	    { "-nodefontsize", "12" }, { "-!nodefontsize" }, { "-edgecolor" },
+	    { "-contextPattern", "assoc", "out" }, { "-inferrel" }, { "!inferrel" } };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void writeSources() throws IOException {
+	Path p = folder.newFolder("p").toPath();
+	Files.write(p.resolve("A.java"), ("package p;\n"
+		+ "/**\n"
+		+ " * @opt attributes\n"
+		+ " * @opt unknown option\n"
+		+ " * @opt nodefontcolor \"dark blue\"\n"
+		+ " * @opt !qualify\n"
+		+ " */\n"
+		+ "public class A { }\n").getBytes(StandardCharsets.UTF_8));
+	Files.write(p.resolve("B.java"), "package p; /** No options */ public class B { }\n"
+		.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static TypeElement type(DocletEnvironment root, String name) {
+	for (Element e : root.getIncludedElements()) {
+	    if (e instanceof TypeElement && ((TypeElement) e).getSimpleName().contentEquals(name)) {
+		return (TypeElement) e;
+	    }
+	}
+	throw new AssertionError("No class " + name);
+    }
+
+    /** Describe the values of the options, without the doclet's option objects */
+    private static String describe(Options o) {
+	return o.toString().replaceFirst("OPTIONS:\\[[^\\]]*\\]", "");
+    }
+
+    @Test
+    public void unknownOptionsAreNotCompiled() {
+	Assert.assertNull(Options.compile(new String[0]));
+	Assert.assertNull(Options.compile(new String[] { "unknown" }));
+	Assert.assertNull(Options.compile(new String[] { "-!all" }));
+	Assert.assertEquals("-nodefontcolor red", Options.compile(new String[] { "-nodefontcolor", "red" }).toString());
+    }
+
+    @Test
+    public void compiledOptionsApplyAsSetOption() {
+	for (String[] opt : OPTIONS) {
+	    Options set = new Options();
+	    set.setOption(opt);
+	    Options compiled = new Options();
+	    compiled.apply(List.of(Options.compile(opt)));
+	    Assert.assertEquals(String.join(" ", opt), describe(set), describe(compiled));
+	}
+	// all of the options, in turn
+	Options set = new Options();
+	List<Options.Mutation> mutations = new ArrayList<>();
+	for (String[] opt : OPTIONS) {
+	    set.setOption(opt);
+	    mutations.add(Options.compile(opt));
+	}
+	Options compiled = new Options();
+	compiled.apply(mutations);
+	Assert.assertEquals(describe(set), describe(compiled));
+	compiled.apply(mutations);
+	Assert.assertEquals("applied again", describe(set), describe(compiled));
+    }
+
+    @Test
+    public void frozenOptionsCannotBeChanged() {
+	Options frozen = new Options().freeze();
+	frozen.apply(List.of());
+	try {
+	    frozen.apply(List.of(Options.compile(new String[] { "-attributes" })));
+	    Assert.fail("frozen options changed");
+	} catch (IllegalStateException e) {
+	    Assert.assertFalse(frozen.showAttributes);
+	}
+	Options copy = frozen.modifiable();
+	copy.apply(List.of(Options.compile(new String[] { "-attributes" })));
+	Assert.assertTrue(copy.showAttributes);
+    }
+
+    @Test
+    public void tagsAreCompiledOncePerElement() throws Exception {
+	TestDoclet.run(folder.getRoot(), (root, opt) -> {
+	    OptionTagCache cache = new OptionTagCache(opt.run.getTags());
+	    TypeElement a = type(root, "A");
+	    List<Options.Mutation> options = cache.getOptions(a);
+	    Assert.assertEquals("unknown option left out", "[attributes, nodefontcolor dark blue, !qualify]",
+		    options.toString());
+	    Assert.assertSame(options, cache.getOptions(a));
+	    Assert.assertTrue(cache.getOptions(type(root, "B")).isEmpty());
+	});
+    }
+
+    @Test
+    public void tagsOverrideTheGlobalOptions() throws Exception {
+	TestDoclet.run(folder.getRoot(), (root, opt) -> {
+	    opt.setOption(new String[] { "-qualify" });
+	    String global = describe(opt);
+	    Options a = opt.getOptionsFor(root.getDocTrees(), type(root, "A"));
+	    Assert.assertNotSame(opt, a);
+	    Assert.assertTrue(a.showAttributes);
+	    Assert.assertFalse(a.showQualified);
+	    Assert.assertEquals("dark blue", a.nodeFontColor);
+	    Assert.assertEquals("global options unchanged", global, describe(opt));
+	    Assert.assertSame("no tags", opt, opt.getOptionsFor(root.getDocTrees(), type(root, "B")));
+	});
+    }
+}
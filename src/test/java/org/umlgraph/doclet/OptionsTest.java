@@ -0,0 +1,187 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of the table of options, checking it against the chain of
+ * {@link Options#matchOption(String, String, boolean)} calls it replaced
+ */
+public class OptionsTest {
+
+    /** The options taking no arguments, all negatable except for -all */
+    private static final String[] FLAGS = { "qualify", "qualifyGenerics", "hideGenerics", "horizontal", "all",
+	    "attributes", "enumconstants", "operations", "enumerations", "constructors", "visibility", "types",
+	    "autosize", "commentname", "nodefontabstractitalic", "postfixpackage", "noguillemot", "views",
+	    "inferrel", "useimports", "collapsible", "inferdep", "inferdepinpackage", "hideprivateinner", "compact",
+	    "incremental", "offline" };
+    /** The options taking arguments */
+    private static final String[] OPTIONS = { "nodefillcolor", "nodefontcolor", "nodefontsize", "nodefontname",
+	    "nodefontclasssize", "nodefontclassname", "nodefonttagsize", "nodefonttagname", "nodefontpackagesize",
+	    "nodefontpackagename", "edgefontcolor", "edgecolor", "edgefontsize", "edgefontname", "shape", "output",
+	    "outputencoding", "bgcolor", "hide", "include", "apidocroot", "apidocmap", "d", "view", "inferreltype",
+	    "inferdepvis", "collpackages", "nodesep", "ranksep", "dotexecutable", "threads", "dotprocesses",
+	    "dotbatch", "dottimeout", "dotcache", "dotcachesize", "linkcache", "link", "contextPattern",
+	    "linkoffline" };
+
+    /** The optionLength method before the table of options */
+    private static int chainOptionLength(String option) {
+	if (Options.matchOption(option, "qualify", true) || Options.matchOption(option, "qualifyGenerics", true)
+		|| Options.matchOption(option, "hideGenerics", true) || Options.matchOption(option, "horizontal", true)
+		|| Options.matchOption(option, "all") || Options.matchOption(option, "attributes", true)
+		|| Options.matchOption(option, "enumconstants", true) || Options.matchOption(option, "operations", true)
+		|| Options.matchOption(option, "enumerations", true) || Options.matchOption(option, "constructors", true)
+		|| Options.matchOption(option, "visibility", true) || Options.matchOption(option, "types", true)
+		|| Options.matchOption(option, "autosize", true) || Options.matchOption(option, "commentname", true)
+		|| Options.matchOption(option, "nodefontabstractitalic", true)
+		|| Options.matchOption(option, "postfixpackage", true)
+		|| Options.matchOption(option, "noguillemot", true) || Options.matchOption(option, "views", true)
+		|| Options.matchOption(option, "inferrel", true) || Options.matchOption(option, "useimports", true)
+		|| Options.matchOption(option, "collapsible", true) || Options.matchOption(option, "inferdep", true)
+		|| Options.matchOption(option, "inferdepinpackage", true)
+		|| Options.matchOption(option, "hideprivateinner", true)
+		|| Options.matchOption(option, "compact", true) || Options.matchOption(option, "incremental", true)
+		|| Options.matchOption(option, "offline", true)) {
+	    return 1;
+	} else if (Options.matchOption(option, "nodefillcolor") || Options.matchOption(option, "nodefontcolor")
+		|| Options.matchOption(option, "nodefontsize") || Options.matchOption(option, "nodefontname")
+		|| Options.matchOption(option, "nodefontclasssize") || Options.matchOption(option, "nodefontclassname")
+		|| Options.matchOption(option, "nodefonttagsize") || Options.matchOption(option, "nodefonttagname")
+		|| Options.matchOption(option, "nodefontpackagesize")
+		|| Options.matchOption(option, "nodefontpackagename")
+		|| Options.matchOption(option, "edgefontcolor") || Options.matchOption(option, "edgecolor")
+		|| Options.matchOption(option, "edgefontsize") || Options.matchOption(option, "edgefontname")
+		|| Options.matchOption(option, "shape") || Options.matchOption(option, "output")
+		|| Options.matchOption(option, "outputencoding") || Options.matchOption(option, "bgcolor")
+		|| Options.matchOption(option, "hide") || Options.matchOption(option, "include")
+		|| Options.matchOption(option, "apidocroot") || Options.matchOption(option, "apidocmap")
+		|| Options.matchOption(option, "d") || Options.matchOption(option, "view")
+		|| Options.matchOption(option, "inferreltype") || Options.matchOption(option, "inferdepvis")
+		|| Options.matchOption(option, "collpackages") || Options.matchOption(option, "nodesep")
+		|| Options.matchOption(option, "ranksep") || Options.matchOption(option, "dotexecutable")
+		|| Options.matchOption(option, "threads") || Options.matchOption(option, "dotprocesses")
+		|| Options.matchOption(option, "dotbatch") || Options.matchOption(option, "dottimeout")
+		|| Options.matchOption(option, "dotcache") || Options.matchOption(option, "dotcachesize")
+		|| Options.matchOption(option, "linkcache") || Options.matchOption(option, "link")) {
+	    return 2;
+	} else if (Options.matchOption(option, "contextPattern") || Options.matchOption(option, "linkoffline")) {
+	    return 3;
+	} else {
+	    return 0;
+	}
+    }
+
+    /** Return the ways of writing an option: with or without dashes, negated or not */
+    private static List<String> spellings(String name) {
+	List<String> spellings = new ArrayList<>();
+	for (String dashes : List.of("", "-", "--")) {
+	    for (String negation : List.of("", "!")) {
+		spellings.add(dashes + negation + name);
+	    }
+	}
+	return spellings;
+    }
+
+    @Test
+    public void optionLengthIsThatOfTheChain() {
+	List<String> names = new ArrayList<>(List.of(FLAGS));
+	names.addAll(List.of(OPTIONS));
+	for (String name : names) {
+	    for (String given : spellings(name)) {
+		Assert.assertEquals(given, chainOptionLength(given), Options.optionLength(given));
+	    }
+	}
+    }
+
+    @Test
+    public void unknownOptionsHaveNoLength() {
+	for (String given : List.of("", "-", "--", "!", "-!", "---qualify", "-!!qualify", "!-qualify", "-QUALIFY",
+		"-qualif", "-qualifyx", "-private", "-sourcepath", "-!all", "!link", "-!linkoffline", "-!contextPattern")) {
+	    Assert.assertEquals(given, chainOptionLength(given), Options.optionLength(given));
+	    Assert.assertEquals(given, 0, Options.optionLength(given));
+	}
+    }
+
+    @Test
+    public void optionsOnlyTheSetterKnewHaveALength() {
+	// the chain of optionLength missed the spelling that setOption used
+	for (String given : spellings("autoSize")) {
+	    Assert.assertEquals(given, 1, Options.optionLength(given));
+	}
+	for (String given : spellings("stats")) {
+	    Assert.assertEquals(given, 1, Options.optionLength(given));
+	}
+    }
+
+    @Test
+    public void flagIsSetUnderEverySpelling() {
+	for (String given : List.of("qualify", "-qualify", "--qualify")) {
+	    Options o = new Options();
+	    o.setOption(new String[] { given });
+	    Assert.assertTrue(given, o.showQualified);
+	    o.setOption(new String[] { given.replace("qualify", "!qualify") });
+	    Assert.assertFalse(given, o.showQualified);
+	}
+	for (String given : spellings("autoSize")) {
+	    Options o = new Options();
+	    o.autoSize = !given.contains("!");
+	    o.setOption(new String[] { given });
+	    Assert.assertEquals(given, !given.contains("!"), o.autoSize);
+	}
+    }
+
+    @Test
+    public void optionArgumentIsSetUnderEverySpelling() {
+	for (String given : List.of("nodefontcolor", "-nodefontcolor", "--nodefontcolor")) {
+	    Options o = new Options();
+	    o.setOption(new String[] { given, "red" });
+	    Assert.assertEquals(given, "red", o.nodeFontColor);
+	    o.setOption(new String[] { given.replace("nodefontcolor", "!nodefontcolor") });
+	    Assert.assertEquals(given, "black", o.nodeFontColor);
+	}
+    }
+
+    @Test
+    public void optionMissingItsArgumentIsSkipped() {
+	Options o = new Options();
+	o.setOption(new String[] { "-nodefontcolor" });
+	Assert.assertEquals("black", o.nodeFontColor);
+	o.setOption(new String[] { "-threads" });
+	Assert.assertEquals(1, o.threads);
+	o.setOption(new String[] { "-hide" });
+	Assert.assertEquals("-hide alone hides everything", 1, o.hidePatterns.size());
+	Assert.assertTrue(o.matchesHideExpression("any.Class"));
+	o.setOption(new String[] { "-!hide" });
+	Assert.assertFalse(o.matchesHideExpression("any.Class"));
+    }
+
+    @Test
+    public void unknownOptionIsIgnored() {
+	Options o = new Options();
+	String before = o.toString();
+	o.setOption(new String[] { "-private" });
+	o.setOption(new String[] { "-!all" });
+	Assert.assertEquals(before, o.toString());
+    }
+}
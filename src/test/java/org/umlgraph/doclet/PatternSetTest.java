@@ -0,0 +1,138 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests of pattern sets, checking their results against those of
+ * matching each pattern in turn
+ */
+public class PatternSetTest {
+
+    /** Fragments of the generated patterns: literals, wildcards and regex constructs */
+    private static final String[] FRAGMENTS = { "a", "b", "$", ".", "\\.", "\\$", "\\\\", ".*", "a*", "[ab]",
+	    "(a|b)", "b?" };
+    /** Characters of the generated names, including line terminators */
+    private static final char[] NAME_CHARS = { 'a', 'b', '.', '$', '\\', '\n', '\r', '\u0085', '\u2028',
+	    '\u2029' };
+
+    /** Return true if one of the patterns matches the name, as the options did before pattern sets */
+    private static boolean reference(List<Pattern> patterns, boolean strict, String name) {
+	for (Pattern p : patterns) {
+	    if (strict ? p.matcher(name).matches() : p.matcher(name).find()) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    private static List<Pattern> compile(String... regexes) {
+	List<Pattern> patterns = new ArrayList<>();
+	for (String regex : regexes) {
+	    patterns.add(Pattern.compile(regex));
+	}
+	return patterns;
+    }
+
+    private static void assertEquivalent(List<Pattern> patterns, String... names) {
+	for (boolean strict : new boolean[] { true, false }) {
+	    PatternSet set = new PatternSet(patterns, strict);
+	    for (String name : names) {
+		String message = patterns + (strict ? " matching " : " finding ") + name;
+		Assert.assertEquals(message, reference(patterns, strict, name), set.matches(name));
+		// the remembered result
+		Assert.assertEquals(message, reference(patterns, strict, name), set.matches(new StringBuilder(name)));
+	    }
+	}
+    }
+
+    @Test
+    public void emptySetMatchesNothing() {
+	Assert.assertFalse(new PatternSet(new ArrayList<>(), true).matches("a"));
+	Assert.assertFalse(new PatternSet(new ArrayList<>(), false).matches(""));
+    }
+
+    @Test
+    public void literalAndPrefixPatterns() {
+	assertEquivalent(compile("com.foo.Bar", "java.*", "java\\.util\\.Map\\$Entry", ".*Impl", ""),
+		"com.foo.Bar", "comxfooxBar", "com.foo.Bar2", "com.foo", "java", "java.util.List", "javax",
+		"java.util.Map$Entry", "java.util.Map.Entry", "FooImpl", "", "a");
+    }
+
+    @Test
+    public void lineTerminatorsAreNotMatchedByTheWildcard() {
+	assertEquivalent(compile("a.b", "c.*", ".*"), "a\nb", "a\rb", "a\u0085b", "a\u2028b", "a\u2029b", "axb",
+		"c\n", "c", "cx\u2029", "\n", "x\ny");
+    }
+
+    @Test
+    public void unmergeablePatternsKeepTheirMeaning() {
+	// merged, the back reference would refer to the group of the first pattern
+	assertEquivalent(compile("(b)x", "(a)\\1"), "aa", "bx", "ab", "bb");
+	// merged, the inline flag would apply to the following patterns
+	assertEquivalent(compile("(?i)a+", "b+"), "AA", "B", "b", "a");
+	assertEquivalent(compile("(?i:a)b", "c"), "Ab", "AB", "c", "C");
+	assertEquivalent(compile("(?<n>a)\\k<n>", "b"), "aa", "b", "ab");
+    }
+
+    @Test
+    public void duplicateGroupNamesAreMatchedSeparately() {
+	assertEquivalent(compile("(?<n>a)b", "(?<n>c)d"), "ab", "cd", "ad", "");
+    }
+
+    @Test
+    public void patternsWithFlagsAreMatchedSeparately() {
+	List<Pattern> patterns = new ArrayList<>();
+	patterns.add(Pattern.compile("foo.bar", Pattern.CASE_INSENSITIVE));
+	patterns.add(Pattern.compile("a.b", Pattern.DOTALL));
+	patterns.add(Pattern.compile("x.*"));
+	assertEquivalent(patterns, "FOO.BAR", "foo.bar", "a\nb", "A\nB", "xyz", "XYZ");
+    }
+
+    @Test
+    public void randomPatternsMatchAsTheirAlternatives() {
+	Random random = new Random(42);
+	for (int i = 0; i < 500; i++) {
+	    String[] regexes = new String[1 + random.nextInt(4)];
+	    for (int j = 0; j < regexes.length; j++) {
+		StringBuilder regex = new StringBuilder();
+		for (int k = random.nextInt(5); k > 0; k--) {
+		    regex.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+		}
+		regexes[j] = regex.toString();
+	    }
+	    String[] names = new String[20];
+	    for (int j = 0; j < names.length; j++) {
+		StringBuilder name = new StringBuilder();
+		for (int k = random.nextInt(6); k > 0; k--) {
+		    name.append(NAME_CHARS[random.nextInt(random.nextInt(4) == 0 ? NAME_CHARS.length : 5)]);
+		}
+		names[j] = name.toString();
+	    }
+	    assertEquivalent(compile(regexes), names);
+	}
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests of the cache of laid out diagrams
+ */
+public class SvgCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path(String name) {
+	return folder.getRoot().toPath().resolve(name);
+    }
+
+    private File write(String name, String content) throws IOException {
+	Path file = path(name);
+	Files.createDirectories(file.getParent());
+	Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+	return file.toFile();
+    }
+
+    private static String read(File file) throws IOException {
+	return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void keyDependsOnGraphVersionAndFormat() throws IOException {
+	File cacheDir = path("cache").toFile();
+	File a = write("a.dot", "digraph G { A -> B }");
+	File b = write("b.dot", "digraph G { A -> B }");
+	File c = write("c.dot", "digraph G { B -> A }");
+	SvgCache cache = new SvgCache(cacheDir, 1 << 20, "dot 2.43", "svg");
+
+	Assert.assertEquals("same graph", cache.key(a), cache.key(b));
+	Assert.assertNotEquals("different graph", cache.key(a), cache.key(c));
+	Assert.assertEquals("same salt", cache.key(a), new SvgCache(cacheDir, 1 << 20, "dot 2.43", "svg").key(a));
+	Assert.assertNotEquals("dot version", cache.key(a), new SvgCache(cacheDir, 1 << 20, "dot 9.0", "svg").key(a));
+	Assert.assertNotEquals("format", cache.key(a), new SvgCache(cacheDir, 1 << 20, "dot 2.43", "png").key(a));
+    }
+
+    @Test
+    public void storedDiagramIsFetched() throws IOException {
+	SvgCache cache = new SvgCache(path("cache").toFile(), 1 << 20, "dot", "svg");
+	File dot = write("out/A.dot", "digraph G { A }");
+	File svg = write("out/A.svg", "<svg>A</svg>");
+	String key = cache.key(dot);
+
+	File target = path("out/B.svg").toFile();
+	Assert.assertFalse("miss before storing", cache.fetch(key, target));
+	Assert.assertFalse(target.exists());
+	cache.store(key, svg);
+	Assert.assertTrue("hit after storing", cache.fetch(key, target));
+	Assert.assertEquals("<svg>A</svg>", read(target));
+	Assert.assertTrue(cache.toString(), cache.toString().startsWith("Diagram cache: 1 hits, 1 misses"));
+    }
+
+    @Test
+    public void fetchDoesNotWriteThroughAnEarlierLink() throws IOException {
+	SvgCache cache = new SvgCache(path("cache").toFile(), 1 << 20, "dot", "svg");
+	String keyA = cache.key(write("A.dot", "digraph G { A }"));
+	String keyB = cache.key(write("B.dot", "digraph G { B }"));
+	cache.store(keyA, write("A.svg", "<svg>A</svg>"));
+	cache.store(keyB, write("B.svg", "<svg>B</svg>"));
+
+	// the target is linked to the first entry, then replaced by the second
+	File target = path("target.svg").toFile();
+	Assert.assertTrue(cache.fetch(keyA, target));
+	Assert.assertTrue(cache.fetch(keyB, target));
+	Assert.assertEquals("<svg>B</svg>", read(target));
+	File again = path("again.svg").toFile();
+	Assert.assertTrue(cache.fetch(keyA, again));
+	Assert.assertEquals("entry left intact", "<svg>A</svg>", read(again));
+    }
+
+    @Test
+    public void entryIsCopiedWhereItCannotBeLinked() throws IOException {
+	Path shm = Paths.get("/dev/shm");
+	Assume.assumeTrue("needs a second file system", Files.isDirectory(shm) && Files.isWritable(shm)
+		&& !Files.getFileStore(shm).equals(Files.getFileStore(folder.getRoot().toPath())));
+	TemporaryFolder other = new TemporaryFolder(shm.toFile());
+	other.create();
+	try {
+	    SvgCache cache = new SvgCache(path("cache").toFile(), 1 << 20, "dot", "svg");
+	    String key = cache.key(write("A.dot", "digraph G { A }"));
+	    cache.store(key, write("A.svg", "<svg>A</svg>"));
+
+	    File target = new File(other.getRoot(), "A.svg");
+	    Assert.assertTrue(cache.fetch(key, target));
+	    Assert.assertEquals("<svg>A</svg>", read(target));
+	    Files.write(target.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+	    File again = path("again.svg").toFile();
+	    Assert.assertTrue(cache.fetch(key, again));
+	    Assert.assertEquals("the copy is independent of the entry", "<svg>A</svg>", read(again));
+	} finally {
+	    other.delete();
+	}
+    }
+
+    @Test
+    public void leastRecentlyUsedEntriesAreEvicted() throws IOException {
+	Path cacheDir = path("cache");
+	// room for two entries of 100 bytes
+	SvgCache cache = new SvgCache(cacheDir.toFile(), 250, "dot", "svg");
+	String[] keys = new String[3];
+	long now = System.currentTimeMillis();
+	for (int i = 0; i < keys.length; i++) {
+	    keys[i] = cache.key(write(i + ".dot", "digraph G { N" + i + " }"));
+	    cache.store(keys[i], write(i + ".svg", String.format("%100s", "")));
+	    Files.setLastModifiedTime(cacheDir.resolve(keys[i] + ".svg"), FileTime.fromMillis(now - 60000 * (3 - i)));
+	}
+	// using the oldest entry makes the second one the least recently used
+	Assert.assertTrue(cache.fetch(keys[0], path("used.svg").toFile()));
+
+	cache.evict();
+	Assert.assertTrue("recently used entry kept", Files.exists(cacheDir.resolve(keys[0] + ".svg")));
+	Assert.assertFalse("least recently used entry evicted", Files.exists(cacheDir.resolve(keys[1] + ".svg")));
+	Assert.assertTrue("newest entry kept", Files.exists(cacheDir.resolve(keys[2] + ".svg")));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.doclet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.DocumentationTool;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import jdk.javadoc.doclet.Doclet;
+import jdk.javadoc.doclet.DocletEnvironment;
+import jdk.javadoc.doclet.Reporter;
+
+/**
+ * Doclet handing the environment of a javadoc run to a unit test, for the
+ * tests needing javac's model. The test runs within the doclet run, with the
+ * options of the run bound to a {@link RunContext}.
+ */
+public class TestDoclet implements Doclet {
+
+    /** The code of a test, run within the doclet run */
+    interface Body {
+	void run(DocletEnvironment root, Options opt) throws Exception;
+    }
+
+    private static Body body;
+    private static Throwable failure;
+
+    /**
+     * Run javadoc on the Java files under the specified folder, and the body
+     * within the doclet run. A failure of the body is rethrown.
+     */
+    static synchronized void run(File sourceFolder, Body test) throws Exception {
+	DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+	List<File> files;
+	try (Stream<Path> paths = Files.walk(sourceFolder.toPath())) {
+	    files = paths.filter(p -> p.toString().endsWith(".java")).map(Path::toFile).collect(Collectors.toList());
+	}
+	StringWriter log = new StringWriter();
+	try (StandardJavaFileManager fm = tool.getStandardFileManager(null, null, null)) {
+	    body = test;
+	    failure = null;
+	    boolean success = tool.getTask(log, fm, null, TestDoclet.class, List.of("-private"),
+		    fm.getJavaFileObjectsFromFiles(files)).call();
+	    if (failure instanceof Exception)
+		throw (Exception) failure;
+	    if (failure instanceof Error)
+		throw (Error) failure;
+	    if (!success)
+		throw new IOException("javadoc failed: " + log);
+	} finally {
+	    body = null;
+	    failure = null;
+	}
+    }
+
+    @Override
+    public void init(Locale locale, Reporter reporter) {
+    }
+
+    @Override
+    public String getName() {
+	return getClass().getSimpleName();
+    }
+
+    @Override
+    public Set<? extends Option> getSupportedOptions() {
+	return Collections.emptySet();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+	return SourceVersion.latest();
+    }
+
+    @Override
+    public boolean run(DocletEnvironment root) {
+	Options options = new Options();
+	RunContext run = new RunContext(root);
+	options.run = run;
+	try {
+	    body.run(root, UmlGraph.buildOptions(root, options));
+	} catch (Throwable t) {
+	    failure = t;
+	} finally {
+	    options.run = null;
+	    run.close();
+	}
+	return true;
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Writes a synthetic Java source tree for scale tests and benchmarks.
+ * <p>
+ * The classes <code>gr.large.p<i>n</i>.C<i>i</i></code> are grouped in
+ * packages of {@link #packageSize} classes and form hierarchies of
+ * {@link #depth} classes. The root of each hierarchy implements one of the
+ * generic interfaces of <code>gr.large.api</code>, and each class has fields
+ * and methods whose types refer to other classes through generic types nested
+ * {@link #genericDepth} levels deep. Every {@link #optEvery}-th class carries <code>@opt</code> tags, and
+ * all classes carry relation tags. The package <code>gr.large.views</code>
+ * holds {@link #views} views, each extending an abstract view, that show one
+ * package with its neighbours in detail.
+ * <p>
+ * The tree depends only on the parameters, so that runs on it can be
+ * compared. The main method writes it to <code>testdata/generated-src</code>
+ * by default, alongside the other test fixtures.
+ */
+public class CorpusGenerator {
+    /** The number of classes */
+    int classes = 1000;
+    /** The number of classes of a package */
+    int packageSize = 50;
+    /** The number of classes of a hierarchy */
+    int depth = 10;
+    /** The number of generic interfaces */
+    int interfaces = 10;
+    /** The nesting of the generic field types */
+    int genericDepth = 2;
+    /** The interval between classes with <code>@opt</code> tags; 0 for none */
+    int optEvery = 3;
+    /** The number of views */
+    int views = 10;
+    /** The seed of the choice of related classes */
+    long seed = 1;
+
+    public CorpusGenerator classes(int classes) {
+        this.classes = classes;
+        return this;
+    }
+
+    public CorpusGenerator packageSize(int packageSize) {
+        this.packageSize = packageSize;
+        return this;
+    }
+
+    public CorpusGenerator depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public CorpusGenerator interfaces(int interfaces) {
+        this.interfaces = interfaces;
+        return this;
+    }
+
+    public CorpusGenerator genericDepth(int genericDepth) {
+        this.genericDepth = genericDepth;
+        return this;
+    }
+
+    public CorpusGenerator optEvery(int optEvery) {
+        this.optEvery = optEvery;
+        return this;
+    }
+
+    public CorpusGenerator views(int views) {
+        this.views = views;
+        return this;
+    }
+
+    public CorpusGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /** Return the number of packages of the corpus, excluding the API and the views */
+    public int getPackageCount() {
+        return (classes + packageSize - 1) / packageSize;
+    }
+
+    /** Return the number of types the corpus declares */
+    public int getTypeCount() {
+        return classes + interfaces + (views > 0 ? views + 1 : 0);
+    }
+
+    /**
+     * Write the corpus under the specified source directory, removing any
+     * previous corpus found there
+     */
+    public void generate(File root) throws IOException {
+        delete(new File(root, "gr/large"));
+        File api = new File(root, "gr/large/api");
+        api.mkdirs();
+        for (int i = 0; i < interfaces; i++) {
+            try (PrintWriter w = writer(new File(api, "I" + i + ".java"))) {
+                writeInterface(w, i);
+            }
+        }
+
+        Random random = new Random(seed);
+        for (int i = 0; i < classes; i++) {
+            File dir = new File(root, "gr/large/p" + i / packageSize);
+            dir.mkdirs();
+            try (PrintWriter w = writer(new File(dir, "C" + i + ".java"))) {
+                writeClass(w, i, random);
+            }
+        }
+
+        if (views > 0) {
+            File dir = new File(root, "gr/large/views");
+            dir.mkdirs();
+            try (PrintWriter w = writer(new File(dir, "ViewBase.java"))) {
+                writeBaseView(w);
+            }
+            for (int i = 0; i < views; i++) {
+                try (PrintWriter w = writer(new File(dir, "View" + i + ".java"))) {
+                    writeView(w, i);
+                }
+            }
+        }
+    }
+
+    private void writeInterface(PrintWriter w, int i) {
+        w.println("package gr.large.api;");
+        w.println();
+        w.println("/**");
+        w.println(" * Generated interface " + i);
+        w.println(" */");
+        w.print("public interface I" + i + "<T>");
+        if (i % 5 != 0) {
+            w.print(" extends I" + (i - 1) + "<T>");
+        }
+        w.println(" {");
+        w.println("    T get" + i + "();");
+        w.println();
+        w.println("    void put" + i + "(T value);");
+        w.println("}");
+    }
+
+    private void writeClass(PrintWriter w, int i, Random random) {
+        int other = random.nextInt(i + 1);
+        int iface = i / depth % interfaces;
+        w.println("package gr.large.p" + i / packageSize + ";");
+        w.println();
+        w.println("import java.util.List;");
+        w.println("import java.util.Map;");
+        w.println();
+        w.println("/**");
+        w.println(" * Generated class " + i);
+        w.println(" *");
+        if (optEvery > 0 && i % optEvery == 0) {
+            w.println(" * @opt attributes");
+            w.println(" * @opt operations");
+            w.println(" * @opt types");
+            w.println(" * @opt nodefillcolor LightYellow");
+        }
+        w.println(" * @navassoc - uses * " + name(other));
+        if (i % 7 == 0) {
+            w.println(" * @composed 1 has 1..* " + name(random.nextInt(i + 1)));
+        }
+        if (i % 11 == 0) {
+            w.println(" * @depend - - - " + name(random.nextInt(i + 1)));
+        }
+        w.println(" */");
+        w.print("public class C" + i);
+        if (i % depth != 0) {
+            w.println(" extends " + name(i - 1) + " {");
+        } else {
+            w.println(" implements gr.large.api.I" + iface + "<" + name(other) + "> {");
+        }
+        w.println("    private " + nested(random, i, genericDepth) + " items;");
+        w.println("    protected Map<String, " + name(random.nextInt(i + 1)) + "> index;");
+        w.println("    int count;");
+        w.println();
+        w.println("    public " + name(random.nextInt(i + 1)) + " next" + i + "(" + name(random.nextInt(i + 1)) + " from) {");
+        w.println("        return null;");
+        w.println("    }");
+        w.println();
+        w.println("    public <T extends " + name(other) + "> List<T> select" + i + "(Map<String, ? super T> filter) {");
+        w.println("        return null;");
+        w.println("    }");
+        if (i % depth == 0) {
+            for (int k = iface - iface % 5; k <= iface; k++) {
+                w.println();
+                w.println("    public " + name(other) + " get" + k + "() {");
+                w.println("        return null;");
+                w.println("    }");
+                w.println();
+                w.println("    public void put" + k + "(" + name(other) + " value) {");
+                w.println("    }");
+            }
+        }
+        w.println("}");
+    }
+
+    /** Return a type nesting lists and maps the specified number of levels around a class */
+    private String nested(Random random, int i, int levels) {
+        if (levels == 0) {
+            return name(random.nextInt(i + 1));
+        }
+        if (levels % 2 == 0) {
+            return "Map<" + name(random.nextInt(i + 1)) + ", " + nested(random, i, levels - 1) + ">";
+        }
+        return "List<" + nested(random, i, levels - 1) + ">";
+    }
+
+    private void writeBaseView(PrintWriter w) {
+        w.println("package gr.large.views;");
+        w.println();
+        w.println("/**");
+        w.println(" * @view");
+        w.println(" * @opt hide");
+        w.println(" * @opt inferrel");
+        w.println(" * @opt inferdep");
+        w.println(" *");
+        w.println(" * @match class gr.large.api.*");
+        w.println(" * @opt !hide");
+        w.println(" * @opt nodefillcolor LightGray");
+        w.println(" */");
+        w.println("public abstract class ViewBase {");
+        w.println("}");
+    }
+
+    private void writeView(PrintWriter w, int i) {
+        int p = i % getPackageCount();
+        w.println("package gr.large.views;");
+        w.println();
+        w.println("/**");
+        w.println(" * @view");
+        w.println(" *");
+        w.println(" * @match class gr.large.p" + p + "\\..*");
+        w.println(" * @opt !hide");
+        w.println(" * @opt attributes");
+        w.println(" * @opt operations");
+        w.println(" *");
+        w.println(" * @match context gr.large.p" + p + "\\.C" + p * packageSize);
+        w.println(" * @opt !hide");
+        w.println(" */");
+        w.println("public class View" + i + " extends ViewBase {");
+        w.println("}");
+    }
+
+    private String name(int i) {
+        return "gr.large.p" + i / packageSize + ".C" + i;
+    }
+
+    private static PrintWriter writer(File file) throws IOException {
+        return new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8));
+    }
+
+    /** Remove a directory tree, such as a generated corpus */
+    public static void delete(File root) {
+        if (!root.exists())
+            return;
+        try (Stream<Path> paths = Files.walk(root.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException e) {
+            System.err.println("Cannot remove " + root + ": " + e);
+        }
+    }
+
+    /**
+     * Write a corpus from the command line:
+     * <code>CorpusGenerator [directory [classes [package size [depth [generic depth [views]]]]]]</code>
+     */
+    public static void main(String[] args) throws IOException {
+        File root = new File(args.length > 0 ? args[0] : "testdata/generated-src");
+        CorpusGenerator generator = new CorpusGenerator();
+        if (args.length > 1)
+            generator.classes(Integer.parseInt(args[1]));
+        if (args.length > 2)
+            generator.packageSize(Integer.parseInt(args[2]));
+        if (args.length > 3)
+            generator.depth(Integer.parseInt(args[3]));
+        if (args.length > 4)
+            generator.genericDepth(Integer.parseInt(args[4]));
+        if (args.length > 5)
+            generator.views(Integer.parseInt(args[5]));
+        generator.generate(root);
+        System.out.println("Wrote " + generator.getTypeCount() + " types in " + generator.getPackageCount()
+                + " packages to " + root);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.DocumentationTool;
+import javax.tools.ToolProvider;
+
+import org.umlgraph.doclet.UmlGraph;
+import org.umlgraph.doclet.UmlGraphDoc;
+
+import jdk.javadoc.doclet.Doclet;
+
+/**
+ * An end-to-end run of a doclet on a source tree, such as one written by the
+ * {@link CorpusGenerator}, measuring its throughput in classes per second and
+ * its peak heap usage. The peak heap usage is the sum of the peak usage of
+ * the heap memory pools, which are reset before the run, and therefore
+ * includes garbage not yet collected.
+ */
+public class ScaleRun {
+
+    /** The outcome of a run */
+    public static class Result {
+        /** The doclet of the run */
+        public final String doclet;
+        /** The number of classes of the source tree */
+        public final int classes;
+        /** True if javadoc reported success */
+        public final boolean success;
+        /** The elapsed time in ms */
+        public final long millis;
+        /** The peak heap usage in bytes */
+        public final long peakHeap;
+        /** The messages of the run */
+        public final String log;
+
+        Result(String doclet, int classes, boolean success, long millis, long peakHeap, String log) {
+            this.doclet = doclet;
+            this.classes = classes;
+            this.success = success;
+            this.millis = millis;
+            this.peakHeap = peakHeap;
+            this.log = log;
+        }
+
+        /** Return the throughput of the run in classes per second */
+        public double classesPerSecond() {
+            return classes * 1000.0 / Math.max(millis, 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d classes in %d ms, %.0f classes/s, peak heap %d MB%s", doclet, classes,
+                    millis, classesPerSecond(), peakHeap >> 20, success ? "" : " (failed)");
+        }
+    }
+
+    /**
+     * Run the specified doclet on all of the classes under the
+     * <code>gr</code> packages of a source tree
+     *
+     * @param doclet     UmlGraph or UmlGraphDoc
+     * @param sourcePath the root of the source tree
+     * @param classes    the number of classes of the tree
+     * @param outFolder  the output directory of the doclet
+     * @param options    further doclet options
+     */
+    public static Result run(Class<? extends Doclet> doclet, File sourcePath, int classes, File outFolder,
+            String... options) {
+        if (!outFolder.exists())
+            outFolder.mkdirs();
+        List<String> arguments = new ArrayList<String>(Arrays.asList("-private", "-sourcepath",
+                sourcePath.getAbsolutePath(), "-subpackages", "gr", "-Xdoclint:none", "-d", outFolder.getAbsolutePath(),
+                "--d=" + outFolder.getAbsolutePath()));
+        arguments.addAll(Arrays.asList(options));
+        StringWriter log = new StringWriter();
+        DocumentationTool tool = ToolProvider.getSystemDocumentationTool();
+        DocumentationTool.DocumentationTask task = tool.getTask(new PrintWriter(log), null, null, doclet, arguments,
+                null);
+
+        List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                heap.add(pool);
+        System.gc();
+        for (MemoryPoolMXBean pool : heap)
+            pool.resetPeakUsage();
+
+        long start = System.nanoTime();
+        boolean success = task.call();
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heap)
+            peakHeap += pool.getPeakUsage().getUsed();
+        return new Result(doclet.getSimpleName(), classes, success, millis, peakHeap, log.toString());
+    }
+
+    /** Return true if the Graphviz dot program can be run */
+    public static boolean hasGraphviz() {
+        try {
+            return new ProcessBuilder("dot", "-V").redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD).start().waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Generate a corpus and run both doclets on it:
+     * <code>ScaleRun [classes [directory]]</code>. The corpus is written to
+     * <i>directory</i><code>-src</code> and the output to
+     * <i>directory</i><code>-out</code>, with <code>testdata/generated</code>
+     * being the default directory.
+     */
+    public static void main(String[] args) throws IOException {
+        String base = args.length > 1 ? args[1] : "testdata/generated";
+        CorpusGenerator generator = new CorpusGenerator();
+        if (args.length > 0)
+            generator.classes(Integer.parseInt(args[0]));
+        File sourcePath = new File(base + "-src");
+        File outFolder = new File(base + "-out");
+        generator.generate(sourcePath);
+        CorpusGenerator.delete(outFolder);
+
+        int classes = generator.getTypeCount();
+        Result uml = run(UmlGraph.class, sourcePath, classes, new File(outFolder, "uml"), "-views");
+        System.out.println(uml);
+        Result doc = run(UmlGraphDoc.class, sourcePath, classes, new File(outFolder, "doc"));
+        System.out.println(doc);
+        if (!uml.success || !doc.success) {
+            System.err.print(uml.success ? doc.log : uml.log);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * UmlGraph class diagram testing framework
+ *
+ * (C) Copyright 2005 Diomidis Spinellis
+ *
+ * Permission to use, copy, and distribute this software and its
+ * documentation for any purpose and without fee is hereby granted,
+ * provided that the above copyright notice appear in all copies and that
+ * both that copyright notice and this permission notice appear in
+ * supporting documentation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND WITHOUT ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, WITHOUT LIMITATION, THE IMPLIED WARRANTIES OF
+ * MERCHANTIBILITY AND FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ *
+ */
+
+package org.umlgraph.test;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.umlgraph.doclet.UmlGraph;
+import org.umlgraph.doclet.UmlGraphDoc;
+
+/**
+ * Runs UmlGraph and UmlGraphDoc end to end on a generated corpus, reporting
+ * their throughput and peak heap. The corpus size is set through the
+ * <code>umlgraph.scale.classes</code> system property; the default keeps the
+ * test short.
+ */
+public class ScaleTest {
+
+    static File sourceFolder = new File("testdata/scale-src");
+
+    static File outFolder = new File("testdata/scale-out");
+
+    static CorpusGenerator generator = new CorpusGenerator()
+	    .classes(Integer.getInteger("umlgraph.scale.classes", 200)).views(4);
+
+    @BeforeClass
+    public static void generate() throws IOException {
+	generator.generate(sourceFolder);
+	CorpusGenerator.delete(outFolder);
+    }
+
+    @Test
+    public void umlGraph() {
+	File out = new File(outFolder, "uml");
+	ScaleRun.Result result = ScaleRun.run(UmlGraph.class, sourceFolder, generator.getTypeCount(), out,
+		"-views");
+	System.out.println(result);
+	Assert.assertTrue(result.log, result.success);
+	for (int i = 0; i < 4; i++)
+	    Assert.assertTrue("View" + i + ".dot has not been generated", new File(out, "View" + i + ".dot").exists());
+    }
+
+    @Test
+    public void umlGraphDoc() {
+	Assume.assumeTrue("Graphviz is not available", ScaleRun.hasGraphviz());
+	File out = new File(outFolder, "doc");
+	ScaleRun.Result result = ScaleRun.run(UmlGraphDoc.class, sourceFolder, generator.getTypeCount(), out);
+	System.out.println(result);
+	Assert.assertTrue(result.log, result.success);
+	Assert.assertTrue("Package diagram has not been generated",
+		new File(out, "gr/large/p0/p0.svg").exists());
+    }
+}